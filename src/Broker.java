@@ -0,0 +1,200 @@
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+* class to route the messages published on a topic to the clients subscribed to it
+* a client sends the String "subscribe <topic>" or "unsubscribe <topic>", or "publish <topic>" followed by the message to publish, of any type
+* a subscriber receives the String "<topic>" followed by the message published, each subscriber has a bounded queue emptied by a pool of threads
+*/
+
+public class Broker {
+
+    /**
+     * the subscribers of each topic
+     */
+    private ConcurrentHashMap <String, Set <Subscriber>> topics=new ConcurrentHashMap <String, Set <Subscriber>> ();
+
+    /**
+     * threads sending the messages to the subscribers, one by core
+     */
+    private ExecutorService senders=Executors.newWorkStealingPool();
+
+    /**
+     * maximum number of messages waiting to be sent to a subscriber
+     */
+    private int queueSize;
+
+    /**
+     * true to drop the messages published to a subscriber whose queue is full, false to make the publisher wait
+     */
+    private boolean drop;
+
+    /**
+     * number of messages dropped because the queue of a subscriber was full
+     */
+    private AtomicLong nbDropped=new AtomicLong();
+
+    /**
+     * class constructor
+     * @param queueSize maximum number of messages waiting to be sent to a subscriber
+     * @param drop true to drop the messages published to a subscriber whose queue is full, false to make the publisher wait
+     */
+    public Broker (int queueSize, boolean drop) {
+        this.queueSize=queueSize;
+        this.drop=drop;
+    }
+
+    /**
+     * receives the requests of a client until it disconnects
+     * @param client the session connected to the client
+     */
+    public void serve (ClientServer client) {
+        Subscriber subscriber=new Subscriber(client);
+        while (client.isConnected()) {
+            Object request=client.receiveObject();
+            if (!client.isConnected())
+                break;
+            if (!(request instanceof String)) {
+                client.send("Impossible to treat the message because it isn't a request");
+                continue;
+            }
+            String command=(String)request;
+            int space=command.indexOf(' ');
+            String topic=(space<0 ? "" : command.substring(space+1));
+            if (command.startsWith("subscribe ")) {
+                topics.computeIfAbsent(topic, key -> ConcurrentHashMap.newKeySet()).add(subscriber);
+                subscriber.topics.add(topic);
+            }
+            else if (command.startsWith("unsubscribe ")) {
+                unsubscribe(subscriber, topic);
+                subscriber.topics.remove(topic);
+            }
+            else if (command.startsWith("publish ")) {
+                Object message=client.receiveObject();
+                if (client.isConnected() && message!=null)
+                    publish(topic, message);
+            }
+            else
+                client.send("Impossible to treat the request "+command);
+        }
+        for (String topic : subscriber.topics)
+            unsubscribe(subscriber, topic);
+        subscriber.queue.clear();
+    }
+
+    /**
+     * gives a message to the subscribers of a topic
+     * @param topic the topic
+     * @param message the message published
+     */
+    public void publish (String topic, Object message) {
+        Set <Subscriber> subscribers=topics.get(topic);
+        if (subscribers==null)
+            return;
+        Publication publication=new Publication(topic, message);
+        for (Subscriber subscriber : subscribers)
+            subscriber.offer(publication);
+    }
+
+    /**
+     * returns the number of messages dropped because the queue of a subscriber was full
+     * @return long the number of messages dropped
+     */
+    public long getNbDropped () {
+        return nbDropped.get();
+    }
+
+    /**
+     * removes a subscriber from a topic, the topic is forgotten when it has no subscriber anymore
+     * @param subscriber the subscriber
+     * @param topic the topic
+     */
+    private void unsubscribe (Subscriber subscriber, String topic) {
+        topics.computeIfPresent(topic, (key, subscribers) -> {
+            subscribers.remove(subscriber);
+            return (subscribers.isEmpty() ? null : subscribers);
+        });
+    }
+
+    /**
+     * a message published on a topic
+     */
+    private static class Publication {
+
+        String topic;
+
+        Object message;
+
+        Publication (String topic, Object message) {
+            this.topic=topic;
+            this.message=message;
+        }
+
+    }
+
+    /**
+     * a client subscribed to topics, the messages published are kept in its queue until a thread of the pool sends them
+     */
+    private class Subscriber implements Runnable {
+
+        ClientServer client;
+
+        ArrayBlockingQueue <Publication> queue=new ArrayBlockingQueue <Publication> (queueSize);
+
+        Set <String> topics=ConcurrentHashMap.newKeySet();
+
+        /**
+         * true while a thread of the pool is sending the messages of the queue
+         */
+        AtomicBoolean scheduled=new AtomicBoolean();
+
+        Subscriber (ClientServer client) {
+            this.client=client;
+        }
+
+        /**
+         * adds a message to the queue, drops it or waits if the queue is full
+         * @param publication the message
+         */
+        void offer (Publication publication) {
+            if (drop) {
+                if (!queue.offer(publication))
+                    nbDropped.incrementAndGet();
+            }
+            else {
+                try {
+                    queue.put(publication);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+            if (scheduled.compareAndSet(false, true))
+                senders.execute(this);
+        }
+
+        /**
+         * sends the messages of the queue
+         */
+        public void run () {
+            do {
+                Publication publication;
+                while ((publication=queue.poll())!=null && client.isConnected()) {
+                    Publication sent=publication;
+                    client.sendTogether(() -> { // a reply of the thread serving the client can't come between the topic and the message
+                        client.send(sent.topic);
+                        client.sendObject(sent.message);
+                    });
+                }
+                scheduled.set(false);
+            } while (!queue.isEmpty() && client.isConnected() && scheduled.compareAndSet(false, true)); // a message added after the last poll
+        }
+
+    }
+
+}
@@ -0,0 +1,96 @@
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+* class to reuse direct buffers instead of allocating one for each message
+*/
+
+public class BufferPool {
+
+    /**
+     * buffers of the pool
+     */
+    private ByteBuffer[] buffers;
+
+    /**
+     * read-only views of the buffers given to the users
+     */
+    private ByteBuffer[] views;
+
+    /**
+     * indexes of the buffers not used
+     */
+    private ArrayBlockingQueue <Integer> free;
+
+    /**
+     * class constructor
+     * @param size the size of each buffer
+     * @param nbBuffers the number of buffers (max 128 to avoid allocating when boxing the indexes)
+     */
+    public BufferPool (int size, int nbBuffers) {
+        nbBuffers=Math.min(nbBuffers,128);
+        buffers=new ByteBuffer [nbBuffers];
+        views=new ByteBuffer [nbBuffers];
+        free=new ArrayBlockingQueue <Integer> (nbBuffers);
+        for (int i=0;i<nbBuffers;i++) {
+            buffers[i]=ByteBuffer.allocateDirect(size);
+            views[i]=buffers[i].asReadOnlyBuffer();
+            free.add(i);
+        }
+    }
+
+    /**
+     * returns the size of each buffer
+     * @return int the size of each buffer
+     */
+    public int getBufferSize () {
+        return buffers[0].capacity();
+    }
+
+    /**
+     * takes a buffer from the pool
+     * @return int the index of the buffer, -1 if all the buffers are used
+     */
+    public int acquire () {
+        Integer index=free.poll();
+        if (index==null)
+            return -1;
+        buffers[index].clear();
+        return index;
+    }
+
+    /**
+     * returns a buffer to write in
+     * @param index the index of the buffer
+     * @return ByteBuffer the buffer
+     */
+    public ByteBuffer buffer (int index) {
+        return buffers[index];
+    }
+
+    /**
+     * returns the read-only view of the bytes written in a buffer
+     * @param index the index of the buffer
+     * @return ByteBuffer the read-only view positioned on the bytes written
+     */
+    public ByteBuffer view (int index) {
+        ByteBuffer view=views[index];
+        view.limit(buffers[index].position());
+        view.position(0);
+        return view;
+    }
+
+    /**
+     * gives back a buffer to the pool, buffers not coming from the pool are ignored
+     * @param buffer the buffer or its read-only view
+     */
+    public void release (ByteBuffer buffer) {
+        for (int i=0;i<views.length;i++) {
+            if (views[i]==buffer || buffers[i]==buffer) {
+                free.offer(i);
+                return;
+            }
+        }
+    }
+
+}
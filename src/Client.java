@@ -4,6 +4,7 @@ public class Client {
         server.connectToServer("localhost", 9876);
         if (server.isConnected()) {
             System.out.println("Connected");
+            server.setKeepAlive(5000, 30000); // answers the pings of the server and notices if it stops
             
             server.send("Hello");
 
@@ -1,10 +1,39 @@
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.DatagramPacket;
-import java.net.DatagramSocket;
 import java.net.InetAddress;
-import java.net.SocketTimeoutException;
+import java.net.InetSocketAddress;
+import java.net.NetworkInterface;
+import java.net.StandardSocketOptions;
+import java.nio.BufferOverflowException;
 import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.FileChannel;
+import java.nio.channels.MembershipKey;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Vector;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
 * class to facilitate exchanges between clients and servers
@@ -13,1067 +42,4531 @@ import java.util.Vector;
 public class ClientServer {
 
     /**
-     * socket to send and receive messages
+     * first byte of a control frame asking for a connection
      */
-    private DatagramSocket socket=null;
+    static final byte CONTROL_CONNECT=(byte)0xA0;
 
     /**
-     * the address of the client or server being communicated with
+     * first byte of a control frame accepting a connection, followed by the port to use
      */
-    private InetAddress addrCom=null;
+    static final byte CONTROL_ACCEPT=(byte)0xA1;
 
     /**
-     * the port of the client or server being communicated with
+     * first byte of a control frame interrupting the communication
      */
-    private int portCom=-1;
+    static final byte CONTROL_DISCONNECT=(byte)0xA2;
 
     /**
-     * if we are connected to a client or a server
+     * first byte of a control frame asking for an acknowledgement, followed by an identifier
      */
-    private boolean connected=false;
+    static final byte CONTROL_PING=(byte)0xA3;
 
     /**
-     * packet to receive messages
+     * first byte of a control frame acknowledging another one, followed by its identifier
      */
-    private DatagramPacket receivedPacket=null;
+    static final byte CONTROL_ACK=(byte)0xA4;
 
     /**
-     * unread messages received
+     * first byte of a control frame testing if a datagram of its size reaches the recipient, followed by its size and padding
      */
-    private Vector <DatagramPacket> messages=new Vector <DatagramPacket> ();
+    static final byte CONTROL_PROBE=(byte)0xA5;
 
     /**
-     * class constructor
+     * size of a control frame : its opcode followed by an int
      */
-    public ClientServer () {
-        try {
-            socket = new DatagramSocket();
-        } catch (Exception e) {
-            System.out.println("Impossible to create a socket");
-            e.printStackTrace();
-        }
-    }
+    static final int CONTROL_SIZE=5;
 
     /**
-     * class constructor
-     * @param portList the port number used to receive messages
+     * type of a message containing several small messages, each one preceded by its length
      */
-    public ClientServer (int portList) {
-        try {
-            socket = new DatagramSocket(portList);
-        } catch (Exception e) {
-            System.out.println("Impossible to create a socket on the port "+portList);
-            e.printStackTrace();
-        }
-    }
+    static final int COALESCED=88;
 
     /**
-     * acessor of connect
-     * @return boolean true if we are connected to client or a server, false otherwise
+     * flag added to the type of a message whose payload is encoded, the type is followed by the codec and the length of the payload decoded
      */
-    public boolean isConnected () {
-        return connected;
-    }
+    static final int ENCODED=0x80;
 
     /**
-     * acessor of addrCom
-     * @return InetAddress the address of the client or server being communicated with
+     * type of a part of a stream, an empty part ends the stream
      */
-    public InetAddress getAddressCom () {
-        if (connected)
-            return addrCom;
-        return null;
-    }
+    static final int STREAM=95;
 
     /**
-     * returns the address of the last message
-     * @return InetAddress the address of the last message
+     * maximum length of a part of a stream
      */
-    public InetAddress getLastAddress () {
-        if (receivedPacket!=null)
-            return receivedPacket.getAddress();
-        return null;
-    }
+    static final int STREAM_CHUNK=1<<16;
 
     /**
-     * returns the port number used to receive messages
-     * @return int the port number used to receive messages
+     * type of the message announcing a file, followed by its length, the file is then sent as a stream
      */
-    public int getLocalPort () {
-        if (socket!=null && !socket.isClosed())
-            return socket.getLocalPort();
-        return -1;
-    }
+    static final int FILE=96;
 
     /**
-     * acessor of portCom
-     * @return int the port of the client or server being communicated with
+     * maximum length of the part of a file mapped in memory at once
      */
-    public int getPortCom () {
-        if (connected)
-            return portCom;
-        return -1;
-    }
+    private static final int MAP_SIZE=1<<27;
 
     /**
-     * returns the port of the last message
-     * @return int the port of the last message
+     * type of a request sent by call, followed by its identifier and by the message of the request with its type
      */
-    public int getLastPort () {
-        if (receivedPacket!=null)
-            return receivedPacket.getPort();
-        return -1;
-    }
+    static final int REQUEST=97;
 
     /**
-     * sends a connection request to a server and waits for a response before being redirected to another port
-     * @param addrServ the server address
-     * @param portServ the server port
+     * type of a response, followed by the identifier of the request and by the message of the response with its type (nothing for an empty response)
      */
-    public void connectToServer (InetAddress addrServ, int portServ) {
-        try {
-            send(addrServ,portServ,"</%/connectionRequest/%/>");
-            String response="";
-            // wait a response for 1 second
-            socket.setSoTimeout(1000);
-            try {
-                do {
-                    byte[] buffer = new byte[1024];
-                    receivedPacket = new DatagramPacket(buffer, buffer.length);
-                    socket.receive(receivedPacket);
-                    buffer=Arrays.copyOfRange(receivedPacket.getData(), 5, receivedPacket.getLength());
-                    response=byteToString(buffer);
-                }while(!addrServ.equals(getLastAddress()) || getLastPort()!=portServ || response.length()<=23 || !response.substring(0,23).equals("</%/connectionReply/%/>"));
-                addrCom=addrServ;
-                String portStr=response.substring(23).trim();
-                portCom=Integer.parseInt(portStr);
-                connected=true;
-                try { // to avoid bugs
-                    Thread.sleep(20);
-                } catch (Exception e) {}
-            } catch (SocketTimeoutException e) {
-                System.out.println("No response from the server "+addrServ+" on the port "+portServ);
-            } finally {
-                socket.setSoTimeout(0);
-            }
-        } catch (Exception e) {
-            System.out.println("Impossible to connect to the server "+addrServ+" on the port "+portServ);
-            e.printStackTrace();
-        }
-    }
+    static final int RESPONSE=98;
 
     /**
-     * sends a connection request to a server and waits for a response before being redirected to another port
-     * @param addrServ the server's domain name
-     * @param portServ the server port
+     * identifier of the LZ77 compressor
      */
-    public void connectToServer (String addrServ, int portServ) {
-        try {
-            connectToServer(InetAddress.getByName(addrServ),portServ);
-        } catch (Exception e) {
-            System.out.println("Impossible to find the address of "+addrServ);
-            e.printStackTrace();
-        }
-    }
+    public static final int CODEC_LZ=1;
 
     /**
-     * connects to a client
-     * @param addrClient the client's domain name
-     * @param portClient the client port
+     * identifier of the codec writing the differences between consecutive ints
      */
-    public void connectToClient (InetAddress addrClient, int portClient) {
-        addrCom=addrClient;
-        portCom=portClient;
-        connected=true;
-    }
+    public static final int CODEC_DELTA_VARINT=2;
 
     /**
-     * waits for a connection request from a client and sends a response with a port number
-     * @param addrServ the server's domain name
-     * @param portServ the server port
+     * minimum length of a payload to encode
      */
-    public void waitClient (int port) {
-        String message="";
-        while (message.length()!=25 || !message.equals("</%/connectionRequest/%/>")) {
-            message=receiveString();
-        }
-        send(receivedPacket.getAddress(),receivedPacket.getPort(),"</%/connectionReply/%/>"+port);
-    }
+    private static final int CODEC_THRESHOLD=256;
 
     /**
-     * sends a disconnection message to the server and interpompts the communication
+     * codecs known by all the instances, indexed by their identifier
      */
-    public void disconnect () {
-        if (connected) {
-            send("</%/disconnection/%/>");
-            connected=false;
-        }
+    private static final Codec[] codecs=new Codec [256];
+
+    static {
+        codecs[CODEC_LZ]=new LzCodec();
+        codecs[CODEC_DELTA_VARINT]=new DeltaVarintCodec();
     }
 
     /**
-     * returns true if the message is a deconnection message, false otherwise
-     * @param message the message to compare
-     * @return true if the message is a deconnection message, false otherwise
+     * types of message, indexed by their number
      */
-    public boolean isDeconnectionMessage (String message) {
-        return message.equals("</%/disconnection/%/>");
+    private static final MessageType[] types=new MessageType [ENCODED];
+
+    static {
+        types[80]=new MessageType("byte []", (client, buffer) -> {
+            byte[] res=new byte [buffer.remaining()];
+            buffer.get(res);
+            return res;
+        });
+        types[81]=new MessageType("String", ClientServer::byteToString);
+        types[82]=new MessageType("int", ClientServer::byteToInt);
+        types[83]=new MessageType("boolean", ClientServer::byteToBoolean);
+        types[84]=new MessageType("double", ClientServer::byteToDouble);
+        types[85]=new MessageType("int []", ClientServer::byteToIntArray);
+        types[86]=new MessageType("boolean []", ClientServer::byteToBooleanArray);
+        types[87]=new MessageType("double []", ClientServer::byteToDoubleArray);
+        types[89]=new MessageType("long", ClientServer::byteToLong);
+        types[90]=new MessageType("float", ClientServer::byteToFloat);
+        types[91]=new MessageType("short", ClientServer::byteToShort);
+        types[92]=new MessageType("char", ClientServer::byteToChar);
+        types[93]=new MessageType("long []", ClientServer::byteToLongArray);
+        types[94]=new MessageType("float []", ClientServer::byteToFloatArray);
+        types[STREAM]=new MessageType("stream", types[80].decoder);
+        types[FILE]=new MessageType("file", ClientServer::byteToLong);
+        types[REQUEST]=new MessageType("request", types[80].decoder);
+        types[RESPONSE]=new MessageType("response", types[80].decoder);
     }
 
     /**
-     * sends bytes
-     * @param addr recipient's address
-     * @param port the recipient's port
-     * @param message bytes to send
+     * serializers of the types of message added, indexed by their number
      */
-    public void send (InetAddress addr, int port, byte [] message) {
-        byte[] buffer=new byte [message.length+1];
-        buffer[0]=80;
-        System.arraycopy(message, 0, buffer, 1, buffer.length-1);
-        sendMessages(addr,port,buffer);
-    }
+    private static final Serializer<?>[] serializers=new Serializer<?> [ENCODED];
 
     /**
-     * sends bytes to the client or server to which we are connected
-     * @param message bytes to send
+     * numbers of the types of message added, indexed by the class of their objects
      */
-    public void send(byte [] message) {
-        if (connected)
-            send(addrCom,portCom,message);
-        else
-            System.out.println("Impossible to send the message because you're not connected");
-    }
+    private static final ConcurrentHashMap <Class<?>, Integer> serializedTypes=new ConcurrentHashMap <Class<?>, Integer> ();
 
     /**
-     * sends a String
-     * @param addr recipient's address
-     * @param port the recipient's port
-     * @param message String to send
+     * maximum number of a type of message added (the next ones are used by the types given)
      */
-    public void send (InetAddress addr, int port, String message) {
-        byte [] bufferPrep=StringToByte(message);
-        byte[] buffer=new byte [bufferPrep.length+1];
-        buffer[0]=81;
-        System.arraycopy(bufferPrep, 0, buffer, 1, buffer.length-1);
-        sendMessages(addr,port,buffer);
-    }
+    public static final int MAX_USER_TYPE=79;
 
     /**
-     * sends a String
-     * @param addr recipient's address
-     * @param port the recipient's port
-     * @param message String to send
+     * thread giving the small messages kept to be coalesced to the handlers when their delay expires, it never waits for a send
      */
-    public void send (String addr, int port, String message) {
-        try {
-            send(InetAddress.getByName(addr),port,message);
-        } catch (Exception e) {
-            System.out.println("Impossible to find the address of "+addr);
-            e.printStackTrace();
-        }
-    }
+    private static final ScheduledExecutorService timer=newTimer();
 
     /**
-     * sends a String to the client or server to which we are connected
-     * @param addr recipient's address
-     * @param port the recipient's port
-     * @param message String to send
+     * checks of the connections whose keep-alive is enabled, each one is checked when the other side may have been silent too long
      */
-    public void send(String message) {
-        if (connected)
-            send(addrCom,portCom,message);
-        else
-            System.out.println("Impossible to send the message because you're not connected");
-    }
+    private static final TimerWheel keepAlives=new TimerWheel(50, 512, "keep-alive");
 
     /**
-     * sends an int
-     * @param addr recipient's address
-     * @param port the recipient's port
-     * @param message int to send
+     * threads answering the requests received and sending the small messages kept, the thread receiving the datagrams and the timer don't wait for the handlers
+     * a flush waiting for the acknowledgements of a slow recipient only holds its own thread
      */
-    public void send (InetAddress addr, int port, int message) {
-        byte [] bufferPrep=intToByte(message);
-        byte[] buffer=new byte [bufferPrep.length+1];
-        buffer[0]=82;
-        System.arraycopy(bufferPrep, 0, buffer, 1, buffer.length-1);
-        sendMessages(addr,port,buffer);
-    }
+    private static final ExecutorService handlers=Executors.newCachedThreadPool(task -> {
+        Thread thread=new Thread(task, "handler");
+        thread.setDaemon(true);
+        return thread;
+    });
 
     /**
-     * sends an int
-     * @param addr recipient's address
-     * @param port the recipient's port
-     * @param message int to send
+     * maximum number of datagrams of a batch
      */
-    public void send (String addr, int port, int message) {
-        try {
-            send(InetAddress.getByName(addr),port,message);
-        } catch (Exception e) {
-            System.out.println("Impossible to find the address of "+addr);
-            e.printStackTrace();
-        }
-    }
+    private static final int MAX_BATCH=64;
 
     /**
-     * sends an int to the client or server to which we are connected
-     * @param addr recipient's address
-     * @param port the recipient's port
-     * @param message int to send
+     * maximum size of the datagrams of a batch
      */
-    public void send(int message) {
-        if (connected)
-            send(addrCom,portCom,message);
-        else
-            System.out.println("Impossible to send the message because you're not connected");
-    }
+    private static final int BATCH_BYTES=1<<18;
 
     /**
-     * sends a boolean
-     * @param addr recipient's address
-     * @param port the recipient's port
-     * @param message boolean to send
+     * default size of the datagrams
      */
-    public void send (InetAddress addr, int port, boolean message) {
-        byte [] bufferPrep=booleanToByte(message);
-        byte[] buffer=new byte [bufferPrep.length+1];
-        buffer[0]=83;
-        System.arraycopy(bufferPrep, 0, buffer, 1, buffer.length-1);
-        sendMessages(addr,port,buffer);
-    }
+    static final int DEFAULT_DATAGRAM_SIZE=1024;
 
     /**
-     * sends a boolean
-     * @param addr recipient's address
-     * @param port the recipient's port
-     * @param message boolean to send
+     * minimum size of the datagrams (an acknowledgement in reliable mode must fit in it)
      */
-    public void send (String addr, int port, boolean message) {
-        try {
-            send(InetAddress.getByName(addr),port,message);
-        } catch (Exception e) {
-            System.out.println("Impossible to find the address of "+addr);
-            e.printStackTrace();
-        }
-    }
+    static final int MIN_DATAGRAM_SIZE=512;
 
     /**
-     * sends a boolean to the client or server to which we are connected
-     * @param addr recipient's address
-     * @param port the recipient's port
-     * @param message boolean to send
+     * maximum size of the payload of a UDP datagram
      */
-    public void send(boolean message) {
-        if (connected)
-            send(addrCom,portCom,message);
-        else
-            System.out.println("Impossible to send the message because you're not connected");
-    }
+    static final int MAX_DATAGRAM_SIZE=65507;
 
     /**
-     * sends a double
-     * @param addr recipient's address
-     * @param port the recipient's port
-     * @param message double to send
+     * argument of the pings sent to check that the other side is alive, above the sizes of datagrams so their acknowledgement isn't taken for the confirmation of a size
      */
-    public void send (InetAddress addr, int port, double message) {
-        byte [] bufferPrep=doubleToByte(message);
-        byte[] buffer=new byte [bufferPrep.length+1];
-        buffer[0]=84;
-        System.arraycopy(bufferPrep, 0, buffer, 1, buffer.length-1);
-        sendMessages(addr,port,buffer);
-    }
+    static final int HEARTBEAT=MAX_DATAGRAM_SIZE+1;
 
     /**
-     * sends a double
-     * @param addr recipient's address
-     * @param port the recipient's port
-     * @param message double to send
+     * sizes tested by the path MTU probing : jumbo frame, Ethernet, IPv6 minimum MTU and IPv4 minimum reassembly size, without the IP and UDP headers
      */
-    public void send (String addr, int port, double message) {
-        try {
-            send(InetAddress.getByName(addr),port,message);
-        } catch (Exception e) {
-            System.out.println("Impossible to find the address of "+addr);
-            e.printStackTrace();
-        }
-    }
+    private static final int[] PROBE_SIZES={8972, 1472, 1232, 548};
 
     /**
-     * sends a double to the client or server to which we are connected
-     * @param addr recipient's address
-     * @param port the recipient's port
-     * @param message double to send
+     * first byte of a fragment sent in reliable mode
      */
-    public void send(double message) {
-        if (connected)
-            send(addrCom,portCom,message);
-        else
-            System.out.println("Impossible to send the message because you're not connected");
-    }
+    static final byte RELIABLE_DATA=(byte)0x90;
 
     /**
-     * sends an array of ints
-     * @param addr recipient's address
-     * @param port the recipient's port
-     * @param message int array to send
+     * first byte of a fragment sent in reliable mode which must be acknowledged immediately
      */
-    public void send (InetAddress addr, int port, int [] message) {
-        byte [] bufferPrep=intArrayToByte(message);
-        byte[] buffer=new byte [bufferPrep.length+1];
-        buffer[0]=85;
-        System.arraycopy(bufferPrep, 0, buffer, 1, buffer.length-1);
-        sendMessages(addr,port,buffer);
-    }
+    static final byte RELIABLE_DATA_ACK=(byte)0x93;
 
     /**
-     * sends an array of ints
-     * @param addr recipient's address
-     * @param port the recipient's port
-     * @param message int array to send
+     * first byte of an acknowledgement of fragments received in reliable mode
      */
-    public void send (String addr, int port, int [] message) {
-        try {
-            send(InetAddress.getByName(addr),port,message);
-        } catch (Exception e) {
-            System.out.println("Impossible to find the address of "+addr);
-            e.printStackTrace();
-        }
-    }
+    static final byte RELIABLE_ACK=(byte)0x91;
 
     /**
-     * sends an array of ints to the client or server to which we are connected
-     * @param addr recipient's address
-     * @param port the recipient's port
-     * @param message int array to send
+     * first byte of a list of fragments missing in reliable mode
      */
-    public void send(int [] message) {
-        if (connected)
-            send(addrCom,portCom,message);
-        else
-            System.out.println("Impossible to send the message because you're not connected");
-    }
+    static final byte RELIABLE_NACK=(byte)0x92;
+
+    /**
+     * length of the header of a fragment sent in reliable mode (first byte, message, fragment, length, fragment size)
+     */
+    private static final int RELIABLE_HEADER=15;
+
+    /**
+     * maximum number of bytes describing the fragments received after the first one missing in an acknowledgement
+     */
+    private static final int SELECTIVE_ACK_BYTES=128;
+
+    /**
+     * number of fragments received before sending an acknowledgement
+     */
+    private static final int ACK_EVERY=8;
+
+    /**
+     * maximum number of consecutive timeouts without acknowledgement before giving up a message
+     */
+    private static final int MAX_RETRIES=10;
+
+    /**
+     * minimum and maximum time (ns) before sending again a fragment not acknowledged
+     */
+    private static final long MIN_RTO=10_000_000L, MAX_RTO=2_000_000_000L;
+
+    /**
+     * size of the receive buffer of the socket requested to the system
+     */
+    static final int RECEIVE_BUFFER_SIZE=1<<20;
+
+    /**
+     * time (ms) after which a message not completely received in reliable mode is forgotten
+     */
+    private static final int REASSEMBLY_TIMEOUT=10000;
+
+    /**
+     * maximum time (ms) between two parts of a message not sent in reliable mode
+     */
+    private static final int LEGACY_TIMEOUT=10;
+
+    /**
+     * initial congestion window (fragments)
+     */
+    private static final int INITIAL_WINDOW=8;
+
+    /**
+     * pools of direct buffers shared by the instances, indexed by the size of their buffers
+     */
+    private static final ConcurrentHashMap <Integer, BufferPool> pools=new ConcurrentHashMap <Integer, BufferPool> ();
+
+    /**
+     * direct buffers used to receive messages without copying them, as large as the datagrams accepted
+     */
+    private BufferPool pool=pool(DEFAULT_DATAGRAM_SIZE);
+
+    /**
+     * if the largest datagram size reaching the server is looked for during the connection
+     */
+    private boolean pathMtuProbing=false;
+
+    /**
+     * if the size of the datagrams sent has been confirmed at the end of the connection
+     */
+    private boolean sizeConfirmed=false;
+
+    /**
+     * channel to send and receive messages
+     */
+    private DatagramChannel channel=null;
+
+    /**
+     * selector waiting for the messages on the channel
+     */
+    private Selector selector=null;
+
+    /**
+     * the address of the client or server being communicated with
+     */
+    private InetAddress addrCom=null;
+
+    /**
+     * the port of the client or server being communicated with
+     */
+    private int portCom=-1;
+
+    /**
+     * if we are connected to a client or a server
+     */
+    private volatile boolean connected=false;
+
+    /**
+     * the address of the last message
+     */
+    private InetAddress lastAddress=null;
+
+    /**
+     * the port of the last message
+     */
+    private int lastPort=-1;
+
+    /**
+     * the address of the datagram being handled
+     */
+    private InetAddress fromAddress=null;
+
+    /**
+     * the port of the datagram being handled
+     */
+    private int fromPort=-1;
+
+    /**
+     * thread receiving the datagrams continuously if it has been started, null otherwise
+     */
+    private volatile Thread receiver=null;
+
+    /**
+     * if the datagrams are handled as soon as they arrive, by the receiver thread or by the multiplexer
+     */
+    private volatile boolean dispatching=false;
+
+    /**
+     * messages received completely by the receiver thread or the multiplexer (length and type followed by the message)
+     */
+    private LinkedBlockingQueue <DatagramPacket> received=new LinkedBlockingQueue <DatagramPacket> ();
+
+    /**
+     * messages not sent in reliable mode being received by the receiver thread, indexed by the address and the port of the sender
+     */
+    private HashMap <InetSocketAddress, PartialMessage> legacyMessages=new HashMap <InetSocketAddress, PartialMessage> ();
+
+    /**
+     * lock held while a message is being sent, to share the instance between threads
+     */
+    private ReentrantLock sendLock=new ReentrantLock();
+
+    /**
+     * signaled by the receiver thread when fragments of the message being sent are acknowledged
+     */
+    private Condition acknowledged=sendLock.newCondition();
+
+    /**
+     * asynchronous receptions waiting for a message, in the order they have been asked
+     */
+    private ArrayDeque <CompletableFuture <Object>> waiting=new ArrayDeque <CompletableFuture <Object>> ();
+
+    /**
+     * called with each message received if it has been set, null otherwise
+     */
+    private volatile MessageListener listener=null;
+
+    /**
+     * called with each request received if it has been set, null otherwise
+     */
+    private volatile RequestHandler requestHandler=null;
+
+    /**
+     * the last time (ns) a datagram has been received
+     */
+    private volatile long lastReceived=System.nanoTime();
+
+    /**
+     * the time (ms) without receiving anything after which a ping is sent, 0 to send no ping
+     */
+    private volatile int keepAliveInterval=0;
+
+    /**
+     * the time (ms) without receiving anything after which the connection is closed, 0 to disable the keep-alive
+     */
+    private volatile int keepAliveTimeout=0;
+
+    /**
+     * true if the connection is checked by keepAlives
+     */
+    private AtomicBoolean keepAliveScheduled=new AtomicBoolean();
+
+    /**
+     * requests sent and waiting for their response, indexed by their identifier
+     */
+    private ConcurrentHashMap <Integer, CompletableFuture <Object>> calls=new ConcurrentHashMap <Integer, CompletableFuture <Object>> ();
+
+    /**
+     * identifier of the last request sent
+     */
+    private AtomicInteger lastCall=new AtomicInteger();
+
+    /**
+     * type of the message (request or response) in which the next message is sent, 0 to send it as it is
+     */
+    private int wrapType=0;
+
+    /**
+     * identifier of the request or response in which the next message is sent
+     */
+    private int wrapId=0;
+
+    /**
+     * buffer reused to encode the messages to send, its capacity is the size of the datagrams sent
+     */
+    private ByteBuffer sendBuffer=null;
+
+    /**
+     * datagrams written before being sent one after the other if the batching is enabled, null otherwise
+     */
+    private ByteBuffer[] batch=null;
+
+    /**
+     * number of datagrams of the batch written and not yet sent
+     */
+    private int batchSize=0;
+
+    /**
+     * small messages kept to be sent together, each one preceded by its length
+     */
+    private ByteBuffer coalesced=null;
+
+    /**
+     * the address and the port of the recipient of the small messages kept
+     */
+    private InetSocketAddress coalescedTo=null;
+
+    /**
+     * maximum time (ms) a small message is kept before being sent, 0 if the small messages aren't coalesced
+     */
+    private int coalescingDelay=0;
+
+    /**
+     * identifier of the codec used for each type of message, 0 if the payload isn't encoded
+     */
+    private byte[] codecOfType=new byte [ENCODED];
+
+    /**
+     * buffer in which the payload to encode is written
+     */
+    private ByteBuffer codecBuffer=null;
+
+    /**
+     * buffer in which the objects sent with a serializer are written
+     */
+    private ByteBuffer serializeBuffer=null;
+
+    /**
+     * the group to which the message being written is published, null if it is sent to a single recipient (read and written under sendLock)
+     */
+    private Group publishing=null;
+
+    /**
+     * the multicast groups joined, indexed by their address
+     */
+    private ConcurrentHashMap <InetAddress, MembershipKey> memberships=new ConcurrentHashMap <InetAddress, MembershipKey> ();
+
+    /**
+     * the type of the message whose payload is written in codecBuffer
+     */
+    private int codecType=0;
+
+    /**
+     * if the payload written is already encoded or mustn't be encoded
+     */
+    private boolean encoding=false;
+
+    /**
+     * small messages received together and not yet read, positioned on their type
+     */
+    private ArrayDeque <ByteBuffer> unpacked=new ArrayDeque <ByteBuffer> ();
+
+    /**
+     * the address and the port of the recipient of the message being sent
+     */
+    private InetSocketAddress recipient=null;
+
+    /**
+     * buffer in which the message being sent is written
+     */
+    private ByteBuffer encoder=null;
+
+    /**
+     * if the fragments are numbered, acknowledged and sent again when they are lost
+     */
+    private boolean reliable=false;
+
+    /**
+     * time (ms) waited for the reply to the first connection request, doubled for each new request
+     */
+    private int connectTimeout=200;
+
+    /**
+     * number of connection requests sent again if there is no reply
+     */
+    private int connectRetries=5;
+
+    /**
+     * the last client to which a port has been given by waitClient
+     */
+    private InetSocketAddress acceptedClient=null;
+
+    /**
+     * the port given to the last client by waitClient
+     */
+    private int acceptedPort=-1;
+
+    /**
+     * buffer reused to write the whole message before sending it in reliable mode
+     */
+    private ByteBuffer messageBuffer=null;
+
+    /**
+     * buffer reused to send the acknowledgements
+     */
+    private ByteBuffer controlBuffer=ByteBuffer.allocate(512);
+
+    /**
+     * the identifier of the last message sent in reliable mode
+     */
+    private int messageId=new Random().nextInt();
+
+    /**
+     * the number of fragments of the message being sent in reliable mode, 0 if no message is being sent
+     */
+    private int sendingCount=0;
+
+    /**
+     * the fragments of the message being sent which have been acknowledged
+     */
+    private boolean[] acked=null;
+
+    /**
+     * the number of fragments of the message being sent which have been acknowledged
+     */
+    private int nbAcked=0;
+
+    /**
+     * the last time (ns) each fragment of the message being sent has been sent
+     */
+    private long[] sentAt=null;
+
+    /**
+     * the fragments of the message being sent which have been sent more than once
+     */
+    private boolean[] retransmitted=null;
+
+    /**
+     * the fragments of the message being sent which are on the way (sent, not acknowledged and not lost)
+     */
+    private boolean[] inFlight=null;
+
+    /**
+     * the fragments of the message being sent which must be sent again
+     */
+    private boolean[] lost=null;
+
+    /**
+     * the number of fragments of the message being sent which are on the way
+     */
+    private int nbInFlight=0;
+
+    /**
+     * the first fragment of the message being sent which has never been sent
+     */
+    private int nextToSend=0;
+
+    /**
+     * no fragment before firstLost must be sent again
+     */
+    private int firstLost=0;
+
+    /**
+     * maximum number of fragments on the way allowed by the network (AIMD : +1 per window, /2 when fragments are lost)
+     */
+    private double congestionWindow=INITIAL_WINDOW;
+
+    /**
+     * the congestion window grows exponentially below this threshold and linearly above it
+     */
+    private double slowStartThreshold=Integer.MAX_VALUE;
+
+    /**
+     * the last time (ns) the congestion window has been reduced because of a fragment missing
+     */
+    private long lastDecrease=0;
+
+    /**
+     * maximum number of fragments on the way allowed by the recipient
+     */
+    private int peerWindow=INITIAL_WINDOW;
+
+    /**
+     * size of the receive buffer of the socket
+     */
+    private int receiveBufferSize=0;
+
+    /**
+     * smoothed round trip time (ns), -1 before the first measure
+     */
+    private long srtt=-1;
+
+    /**
+     * variation of the round trip time (ns)
+     */
+    private long rttvar=0;
+
+    /**
+     * time (ns) before sending again a fragment not acknowledged
+     */
+    private long rto=200_000_000L;
+
+    /**
+     * messages being received in reliable mode
+     */
+    private Reassembly reassembly=new Reassembly(REASSEMBLY_TIMEOUT);
+
+    /**
+     * messages received completely but not read yet (length and type followed by the message)
+     */
+    private ArrayDeque <DatagramPacket> ready=new ArrayDeque <DatagramPacket> ();
+
+    /**
+     * unread messages received, indexed by the address and the port of the sender
+     */
+    private ConcurrentHashMap <InetSocketAddress, ConcurrentLinkedQueue <DatagramPacket>> messages=new ConcurrentHashMap <InetSocketAddress, ConcurrentLinkedQueue <DatagramPacket>> ();
+
+    /**
+     * senders of the unread messages in the order of arrival (one for each message, already read messages are skipped)
+     */
+    private ConcurrentLinkedQueue <InetSocketAddress> messagesOrder=new ConcurrentLinkedQueue <InetSocketAddress> ();
+
+    /**
+     * multiplexer sending and receiving the messages if we are a session of a multiplexer, null otherwise
+     */
+    private Multiplexer multiplexer=null;
+
+    /**
+     * messages routed by the multiplexer to this session
+     */
+    private LinkedBlockingQueue <DatagramPacket> inbox=null;
+
+    /**
+     * bytes of the message not sent in reliable mode still to be routed by the multiplexer to this session, its next datagrams are parts of it whatever their first byte
+     */
+    private int routedRemaining=0;
+
+    /**
+     * the time (ns) the last part of this message has been routed
+     */
+    private long routedAt=0;
+
+    /**
+     * class constructor
+     */
+    public ClientServer () {
+        sendBuffer=ByteBuffer.allocateDirect(DEFAULT_DATAGRAM_SIZE);
+        try {
+            openChannel(new InetSocketAddress(0));
+        } catch (Exception e) {
+            System.out.println("Impossible to create a socket");
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * class constructor
+     * @param portList the port number used to receive messages
+     */
+    public ClientServer (int portList) {
+        sendBuffer=ByteBuffer.allocateDirect(DEFAULT_DATAGRAM_SIZE);
+        try {
+            openChannel(new InetSocketAddress(portList));
+        } catch (Exception e) {
+            System.out.println("Impossible to create a socket on the port "+portList);
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * opens the channel in non-blocking mode to wait for the messages with the selector
+     * @param local the local address of the channel
+     */
+    private void openChannel (InetSocketAddress local) throws Exception {
+        channel=DatagramChannel.open();
+        channel.bind(local);
+        channel.configureBlocking(false);
+        channel.setOption(StandardSocketOptions.SO_RCVBUF, RECEIVE_BUFFER_SIZE);
+        receiveBufferSize=channel.getOption(StandardSocketOptions.SO_RCVBUF);
+        selector=Selector.open();
+        channel.register(selector, SelectionKey.OP_READ);
+    }
+
+    /**
+     * class constructor of a session of a multiplexer
+     * @param multiplexer the multiplexer sending and receiving the messages
+     * @param addrClient the client's address
+     * @param portClient the client port
+     * @param datagramSize the size of the datagrams sent to the client
+     */
+    ClientServer (Multiplexer multiplexer, InetAddress addrClient, int portClient, int datagramSize) {
+        this.multiplexer=multiplexer;
+        sendBuffer=ByteBuffer.allocate(datagramSize); // heap memory, a server may have many sessions
+        inbox=new LinkedBlockingQueue <DatagramPacket> ();
+        receiveBufferSize=multiplexer.getReceiveBufferSize();
+        connectToClient(addrClient, portClient);
+    }
+
+    /**
+     * acessor of connect
+     * @return boolean true if we are connected to client or a server, false otherwise
+     */
+    public boolean isConnected () {
+        return connected;
+    }
+
+    /**
+     * enables or disables the reliable mode : the fragments are numbered, acknowledged and sent again if they are lost (the recipient must also be in reliable mode)
+     * @param reliable true to enable the reliable mode, false otherwise
+     */
+    public void setReliable (boolean reliable) {
+        this.reliable=reliable;
+    }
+
+    /**
+     * acessor of reliable
+     * @return boolean true if the reliable mode is enabled, false otherwise
+     */
+    public boolean isReliable () {
+        return reliable;
+    }
+
+    /**
+     * sets the size of the datagrams sent and received, the messages are split into datagrams of this size
+     * the size used with a server is the smallest of the sizes of the client and of the server, to set before the connection
+     * @param size the size of the datagrams (between 512 and 65507 bytes)
+     */
+    public void setDatagramSize (int size) {
+        size=Math.max(MIN_DATAGRAM_SIZE,Math.min(size,MAX_DATAGRAM_SIZE));
+        if (multiplexer==null)
+            pool=pool(size);
+        setSendSize(size);
+    }
+
+    /**
+     * returns the size of the datagrams sent
+     * @return int the size of the datagrams sent
+     */
+    public int getDatagramSize () {
+        return sendBuffer.capacity();
+    }
+
+    /**
+     * enables or disables the batching : the datagrams of a message are all written in a batch, then sent one after the other when it is full or at the end of the message, instead of alternating writing and sending
+     * it only changes the order of the work : each datagram is still sent by its own system call, DatagramChannel can't send several datagrams at once
+     * @param batching true to enable the batching, false otherwise
+     */
+    public void setBatching (boolean batching) {
+        sendLock.lock();
+        try {
+            batch=(batching ? newBatch(sendBuffer.capacity(), sendBuffer.isDirect()) : null);
+        } finally {
+            sendLock.unlock();
+        }
+    }
+
+    /**
+     * acessor of batching
+     * @return boolean true if the batching is enabled, false otherwise
+     */
+    public boolean isBatching () {
+        return batch!=null;
+    }
+
+    /**
+     * enables or disables the coalescing : the small messages sent to the same recipient are kept and sent together in one message, when there is no more space or when the delay expires
+     * the recipient unpacks them in its receiveX methods
+     * @param delay maximum time (ms) a small message is kept before being sent, 0 to disable the coalescing
+     */
+    public void setCoalescing (int delay) {
+        sendLock.lock();
+        try {
+            flush();
+            coalescingDelay=Math.max(0,delay);
+            coalesced=(0<coalescingDelay ? ByteBuffer.allocate(sendBuffer.capacity()-RELIABLE_HEADER-1) : null);
+        } finally {
+            sendLock.unlock();
+        }
+    }
+
+    /**
+     * sends at once the small messages kept by the coalescing
+     */
+    public void flush () {
+        sendLock.lock();
+        try {
+            if (coalesced==null || coalesced.position()==0)
+                return;
+            coalesced.flip();
+            ByteBuffer bundle=coalesced;
+            coalesced=null; // the bundle is sent as a usual message
+            beginMessage(coalescedTo.getAddress(),coalescedTo.getPort(),COALESCED,bundle.remaining());
+            writeBytes(bundle.array(),0,bundle.remaining());
+            endMessage();
+            coalesced=bundle;
+            coalesced.clear();
+        } finally {
+            sendLock.unlock();
+        }
+    }
+
+    /**
+     * adds a codec known by all the instances, it must be added with the same identifier by the recipients
+     * @param id the identifier of the codec (between 3 and 255, 1 and 2 are the codecs given)
+     * @param codec the codec
+     */
+    public static void registerCodec (int id, Codec codec) {
+        if (id<=CODEC_DELTA_VARINT || codecs.length<=id)
+            System.out.println("Impossible to register the codec because the identifier "+id+" isn't between "+(CODEC_DELTA_VARINT+1)+" and "+(codecs.length-1));
+        else
+            codecs[id]=codec;
+    }
+
+    /**
+     * adds a type of message known by all the instances, its objects are sent with sendObject and received with receiveObject
+     * it must be added with the same number and a serializer reading the same fields by the recipients
+     * @param type the number of the type (between 1 and 79)
+     * @param messageClass the class of the objects
+     * @param serializer the serializer writing and reading the objects
+     */
+    public static <T> void registerSerializer (int type, Class <T> messageClass, Serializer <T> serializer) {
+        if (type<1 || MAX_USER_TYPE<type)
+            System.out.println("Impossible to register the serializer because the type "+type+" isn't between 1 and "+MAX_USER_TYPE);
+        else {
+            serializers[type]=serializer;
+            types[type]=new MessageType(messageClass.getSimpleName(), (client, buffer) -> serializer.read(buffer));
+            serializedTypes.put(messageClass, type);
+        }
+    }
+
+    /**
+     * sets the codec encoding the payloads of a type of message longer than 256 bytes, a payload is sent as it is if its encoding isn't shorter
+     * @param type the type of message (80 for byte [], 81 for String, 85 for int [], a type added with registerSerializer ...)
+     * @param codecId the identifier of the codec, 0 to send the payloads as they are
+     */
+    public void setCodec (int type, int codecId) {
+        if (type<0 || ENCODED<=type || codecId<0 || codecs.length<=codecId || (codecId!=0 && codecs[codecId]==null))
+            System.out.println("Impossible to set the codec "+codecId+" for the type "+type);
+        else
+            codecOfType[type]=(byte)codecId;
+    }
+
+    /**
+     * enables or disables the compression of the large messages : LZ77 for the byte [], String and boolean [], differences between consecutive ints for the int []
+     * @param compression true to enable the compression, false otherwise
+     */
+    public void setCompression (boolean compression) {
+        setCodec(80,(compression ? CODEC_LZ : 0));
+        setCodec(81,(compression ? CODEC_LZ : 0));
+        setCodec(85,(compression ? CODEC_DELTA_VARINT : 0));
+        setCodec(86,(compression ? CODEC_LZ : 0));
+    }
+
+    /**
+     * encodes the payload written in codecBuffer and sends it, or sends it as it is if its encoding isn't shorter
+     */
+    private void sendEncoded () {
+        codecBuffer.flip();
+        int length=codecBuffer.remaining();
+        int codecId=codecOfType[codecType] & 0xFF;
+        ByteBuffer encoded=codecs[codecId].encode(codecBuffer.array(), 0, length);
+        InetSocketAddress to=recipient;
+        encoding=true;
+        try {
+            if (encoded!=null && encoded.remaining()+1+Integer.BYTES<length) {
+                beginMessage(to.getAddress(),to.getPort(),codecType | ENCODED,1+Integer.BYTES+encoded.remaining());
+                writeByte((byte)codecId);
+                writeInt(length);
+                writeBytes(encoded.array(),encoded.arrayOffset()+encoded.position(),encoded.remaining());
+            }
+            else {
+                beginMessage(to.getAddress(),to.getPort(),codecType,length);
+                writeBytes(codecBuffer.array(),0,length);
+            }
+            endMessage();
+        } finally {
+            encoding=false;
+        }
+    }
+
+    /**
+     * decodes the payload of a message received
+     * @param data the array containing the message
+     * @param offset the position of the type of the message
+     * @param length the length of the message with its type
+     * @return byte [] the message decoded preceded by its length, null if it can't be decoded
+     */
+    private byte[] decode (byte[] data, int offset, int length) {
+        ByteBuffer reader=ByteBuffer.wrap(data, offset, length);
+        int type=reader.get() & ~ENCODED;
+        int codecId=(1+Integer.BYTES<=reader.remaining() ? reader.get() & 0xFF : 0);
+        int decodedLength=(Integer.BYTES<=reader.remaining() ? reader.getInt() : -1);
+        Codec codec=codecs[codecId];
+        if (codec==null || decodedLength<0) {
+            System.out.println("Impossible to decode the message because the codec "+codecId+" is unknown");
+            return null;
+        }
+        byte[] res=new byte [Integer.BYTES+1+decodedLength];
+        ByteBuffer.wrap(res).putInt(1+decodedLength).put((byte)type);
+        if (!codec.decode(data, reader.position(), reader.remaining(), res, Integer.BYTES+1, decodedLength)) {
+            System.out.println("Impossible to decode the message because it is corrupted");
+            return null;
+        }
+        return res;
+    }
+
+    /**
+     * decodes a message received if its payload is encoded
+     * @param message the message received, positioned on its type
+     * @return ByteBuffer the message decoded, positioned on its type, null if it can't be decoded
+     */
+    private ByteBuffer decode (ByteBuffer message) {
+        if (message==null || (message.get(message.position()) & ENCODED)==0)
+            return message;
+        byte[] data=toBytes(message);
+        byte[] res=decode(data, 0, data.length);
+        if (res==null)
+            return null;
+        return ByteBuffer.wrap(res, Integer.BYTES, res.length-Integer.BYTES).slice().asReadOnlyBuffer();
+    }
+
+    /**
+     * creates the thread sending the small messages kept when their delay expires
+     * @return ScheduledExecutorService the thread
+     */
+    private static ScheduledExecutorService newTimer () {
+        ScheduledThreadPoolExecutor res=new ScheduledThreadPoolExecutor(1, task -> {
+            Thread thread=new Thread(task, "coalescing");
+            thread.setDaemon(true);
+            return thread;
+        });
+        res.setRemoveOnCancelPolicy(true);
+        return res;
+    }
+
+    /**
+     * allocates the datagrams of a batch in a single buffer
+     * @param size the size of the datagrams
+     * @param direct true to allocate direct memory, false for heap memory
+     * @return ByteBuffer [] the datagrams of the batch
+     */
+    private static ByteBuffer[] newBatch (int size, boolean direct) {
+        int nbDatagrams=Math.max(2,Math.min(MAX_BATCH,BATCH_BYTES/size));
+        ByteBuffer buffer=(direct ? ByteBuffer.allocateDirect(nbDatagrams*size) : ByteBuffer.allocate(nbDatagrams*size));
+        ByteBuffer[] res=new ByteBuffer [nbDatagrams];
+        for (int i=0;i<nbDatagrams;i++) {
+            buffer.limit((i+1)*size).position(i*size);
+            res[i]=buffer.slice();
+        }
+        return res;
+    }
+
+    /**
+     * enables or disables the path MTU probing : during the connection, datagrams of decreasing sizes are sent to the server and the largest one acknowledged gives the size of the datagrams
+     * @param probing true to enable the path MTU probing, false otherwise
+     */
+    public void setPathMtuProbing (boolean probing) {
+        pathMtuProbing=probing;
+    }
+
+    /**
+     * sets the time waited for the reply to the first connection request, doubled for each new request
+     * @param ms the time waited (ms)
+     */
+    public void setConnectTimeout (int ms) {
+        connectTimeout=Math.max(1,ms);
+    }
+
+    /**
+     * sets the number of connection requests sent again if there is no reply
+     * @param retries the number of requests sent again
+     */
+    public void setConnectRetries (int retries) {
+        connectRetries=Math.max(0,retries);
+    }
+
+    /**
+     * starts a thread receiving the datagrams continuously, the messages are then read from a queue and the instance can be shared between threads
+     */
+    public synchronized void startReceiver () {
+        if (dispatching)
+            return;
+        if (multiplexer!=null) { // a session is already fed by the thread of the multiplexer
+            synchronized (inbox) {
+                dispatching=true;
+                DatagramPacket packet;
+                while ((packet=inbox.poll())!=null)
+                    deliver(packet);
+            }
+            return;
+        }
+        dispatching=true;
+        receiver=new Thread(this::receiveLoop, "receiver-"+getLocalPort());
+        receiver.setDaemon(true);
+        receiver.start();
+    }
+
+    /**
+     * stops the thread receiving the datagrams continuously
+     */
+    public synchronized void stopReceiver () {
+        if (!dispatching)
+            return;
+        dispatching=false;
+        receiver=null;
+        if (selector!=null)
+            selector.wakeup();
+    }
+
+    /**
+     * acessor of addrCom
+     * @return InetAddress the address of the client or server being communicated with
+     */
+    public InetAddress getAddressCom () {
+        if (connected)
+            return addrCom;
+        return null;
+    }
+
+    /**
+     * returns the address of the last message
+     * @return InetAddress the address of the last message
+     */
+    public InetAddress getLastAddress () {
+        return lastAddress;
+    }
+
+    /**
+     * returns the port number used to receive messages
+     * @return int the port number used to receive messages
+     */
+    public int getLocalPort () {
+        if (multiplexer!=null)
+            return multiplexer.getLocalPort();
+        if (channel!=null && channel.isOpen())
+            return channel.socket().getLocalPort();
+        return -1;
+    }
+
+    /**
+     * acessor of portCom
+     * @return int the port of the client or server being communicated with
+     */
+    public int getPortCom () {
+        if (connected)
+            return portCom;
+        return -1;
+    }
+
+    /**
+     * returns the port of the last message
+     * @return int the port of the last message
+     */
+    public int getLastPort () {
+        return lastPort;
+    }
+
+    /**
+     * sends a connection request to a server and waits for a response before being redirected to another port
+     * the request is sent again with a doubled timeout while there is no reply, the reply is confirmed by an acknowledgement
+     * @param addrServ the server address
+     * @param portServ the server port
+     */
+    public void connectToServer (InetAddress addrServ, int portServ) {
+        try {
+            int attempt=0;
+            int timeout=connectTimeout;
+            long sentAt=0;
+            long deadline=0;
+            int reply=0;
+            boolean accepted=false;
+            while (!accepted) { // request sent, waiting for the reply
+                long now=System.currentTimeMillis();
+                if (deadline<=now) { // no reply : the request or the reply has been lost
+                    if (connectRetries<attempt) {
+                        System.out.println("No response from the server "+addrServ+" on the port "+portServ);
+                        return;
+                    }
+                    if (0<attempt)
+                        timeout*=2;
+                    sendControl(addrServ,portServ,CONTROL_CONNECT,pool.getBufferSize()); // the size of the datagrams we can receive
+                    sentAt=now;
+                    deadline=now+timeout;
+                    attempt++;
+                }
+                ByteBuffer buffer=receiveDatagram((int)Math.max(1,deadline-now));
+                if (buffer!=null) {
+                    if (controlOpcode(buffer)==CONTROL_ACCEPT && addrServ.equals(fromAddress) && fromPort==portServ) {
+                        reply=buffer.getInt(buffer.position()+1); // negative if the port is above 32767
+                        accepted=true;
+                    }
+                    releaseBuffer(buffer);
+                }
+            }
+            addrCom=addrServ;
+            portCom=reply>>>16;
+            setSendSize(Math.min(sendBuffer.capacity(),Math.max(MIN_DATAGRAM_SIZE,reply&0xFFFF)));
+            if (pathMtuProbing)
+                probePathMtu(Math.max(20,4*(System.currentTimeMillis()-sentAt)));
+            connected=true;
+            sizeConfirmed=true;
+            sendControl(addrCom,portCom,CONTROL_ACK,sendBuffer.capacity()); // the session already listens on the port, no need to wait
+        } catch (Exception e) {
+            System.out.println("Impossible to connect to the server "+addrServ+" on the port "+portServ);
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * sends a connection request to a server and waits for a response before being redirected to another port
+     * @param addrServ the server's domain name
+     * @param portServ the server port
+     */
+    public void connectToServer (String addrServ, int portServ) {
+        try {
+            connectToServer(InetAddress.getByName(addrServ),portServ);
+        } catch (Exception e) {
+            System.out.println("Impossible to find the address of "+addrServ);
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * connects to a client
+     * @param addrClient the client's domain name
+     * @param portClient the client port
+     */
+    public void connectToClient (InetAddress addrClient, int portClient) {
+        addrCom=addrClient;
+        portCom=portClient;
+        connected=true;
+    }
+
+    /**
+     * waits for a connection request from a client and sends a response with a port number
+     * the port must already be listened, the requests sent again by the last client are answered with the same port
+     * @param port the port given to the client
+     */
+    public void waitClient (int port) {
+        try {
+            int size;
+            while (true) {
+                ByteBuffer request=receiveDatagram(0);
+                byte op=controlOpcode(request);
+                size=(op==CONTROL_CONNECT ? request.getInt(request.position()+1) : 0);
+                releaseBuffer(request);
+                if (op!=CONTROL_CONNECT)
+                    continue;
+                if (acceptedClient!=null && acceptedClient.getPort()==fromPort && acceptedClient.getAddress().equals(fromAddress)) // the reply has been lost
+                    sendControl(fromAddress,fromPort,CONTROL_ACCEPT,acceptedPort);
+                else
+                    break;
+            }
+            acceptedClient=new InetSocketAddress(fromAddress, fromPort);
+            acceptedPort=acceptReply(port, size);
+            sendControl(fromAddress,fromPort,CONTROL_ACCEPT,acceptedPort);
+        } catch (Exception e) {
+            System.out.println("Impossible to wait for a client");
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * sends a disconnection message to the server and interpompts the communication
+     */
+    public void disconnect () {
+        if (connected) {
+            flush();
+            sendControl(addrCom,portCom,CONTROL_DISCONNECT,0);
+            connected=false;
+            if (multiplexer!=null)
+                multiplexer.remove(new InetSocketAddress(addrCom, portCom));
+        }
+    }
+
+    /**
+     * disconnects and closes the channel, the port is freed and the instance can't be used anymore
+     */
+    public void close () {
+        disconnect();
+        keepAliveTimeout=0;
+        stopReceiver();
+        if (multiplexer!=null) // the channel is the one of the multiplexer
+            return;
+        try {
+            channel.close();
+            selector.close();
+        } catch (Exception e) {
+            System.out.println("Impossible to close the channel");
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * enables the keep-alive of the connection : a ping is sent when nothing has been received for a while, and the connection is closed if nothing is received anymore
+     * the other side answers the pings if it is reading its messages, it is the case of a multiplexer and of an instance whose keep-alive is enabled
+     * when the connection is closed the methods waiting for a message return, or the listener is told by the thread of the keep-alive
+     * @param interval the time (ms) without receiving anything after which a ping is sent, 0 to send no ping
+     * @param timeout the time (ms) without receiving anything after which the connection is closed, 0 to disable the keep-alive
+     */
+    public void setKeepAlive (int interval, int timeout) {
+        if (interval<0 || timeout<0 || (0<timeout && timeout<=interval)) {
+            System.out.println("Impossible to set the keep-alive because the timeout isn't longer than the interval");
+            return;
+        }
+        if (0<timeout && !connected) {
+            System.out.println("Impossible to set the keep-alive because you're not connected");
+            return;
+        }
+        keepAliveInterval=interval;
+        keepAliveTimeout=timeout;
+        if (timeout==0) // the next check stops
+            return;
+        lastReceived=System.nanoTime();
+        if (multiplexer==null) // the pings are answered even if no message is waited for, by the multiplexer for a session
+            startReceiver();
+        if (keepAliveScheduled.compareAndSet(false, true))
+            keepAlives.schedule(this::checkAlive, (0<interval ? interval : timeout)*1_000_000L);
+    }
+
+    /**
+     * sends a ping or closes the connection if nothing has been received for too long (called by keepAlives)
+     * @param now the current time (ns)
+     * @return long the delay (ns) before the next check, -1 to stop checking
+     */
+    private long checkAlive (long now) {
+        long interval=keepAliveInterval*1_000_000L;
+        long timeout=keepAliveTimeout*1_000_000L;
+        if (timeout==0 || !connected) {
+            keepAliveScheduled.set(false);
+            return -1;
+        }
+        long idle=now-lastReceived;
+        if (timeout<=idle) {
+            keepAliveScheduled.set(false);
+            expire();
+            return -1;
+        }
+        if (interval==0)
+            return timeout-idle;
+        if (idle<interval)
+            return interval-idle;
+        sendControl(addrCom,portCom,CONTROL_PING,HEARTBEAT);
+        return Math.min(interval,timeout-idle);
+    }
+
+    /**
+     * closes the connection because nothing has been received for too long, as if the other side had disconnected
+     */
+    private void expire () {
+        if (multiplexer!=null) {
+            multiplexer.remove(new InetSocketAddress(addrCom, portCom));
+            byte[] frame={CONTROL_DISCONNECT,0,0,0,0};
+            deliver(new DatagramPacket(frame, frame.length, addrCom, portCom)); // handled like the disconnection of the client
+            return;
+        }
+        connected=false;
+        disconnected(addrCom, portCom);
+    }
+
+    /**
+     * marks the time a datagram has been received, for the keep-alive
+     */
+    void touch () {
+        lastReceived=System.nanoTime();
+    }
+
+    /**
+     * returns the argument of the control frame accepting a connection : the port to use and the size of the datagrams
+     * @param port the port to use
+     * @param size the size of the datagrams the client can receive
+     * @return int the port in the 16 high bits and the size in the 16 low bits
+     */
+    int acceptReply (int port, int size) {
+        size=Math.max(MIN_DATAGRAM_SIZE,Math.min(size,sendBuffer.capacity()));
+        return (port << 16) | size;
+    }
+
+    /**
+     * sends datagrams of decreasing sizes to the server and keeps the size of the largest one acknowledged
+     * @param ms the time waited for the acknowledgements
+     */
+    private void probePathMtu (long ms) throws Exception {
+        int size=sendBuffer.capacity();
+        int smallest=size;
+        InetSocketAddress server=new InetSocketAddress(addrCom, portCom);
+        sendProbe(server, size);
+        for (int probe : PROBE_SIZES) {
+            if (probe<size && MIN_DATAGRAM_SIZE<=probe) {
+                sendProbe(server, probe);
+                smallest=probe;
+            }
+        }
+        int largest=0;
+        long end=System.currentTimeMillis()+ms;
+        long wait;
+        while (largest<size && 0<(wait=end-System.currentTimeMillis())) {
+            ByteBuffer buffer=receiveDatagram((int)wait);
+            if (buffer==null)
+                break;
+            if (controlOpcode(buffer)==CONTROL_ACK && addrCom.equals(fromAddress) && fromPort==portCom) {
+                largest=Math.max(largest,buffer.getInt(buffer.position()+1));
+                releaseBuffer(buffer);
+            }
+            else { // a message or a control frame, kept for later
+                byte[] other=toBytes(buffer);
+                addUnread(new DatagramPacket(other, other.length, fromAddress, fromPort));
+            }
+        }
+        setSendSize(Math.min(size,(0<largest ? largest : smallest)));
+    }
+
+    /**
+     * sends a datagram testing if its size reaches the recipient
+     * @param addr the address and the port of the recipient
+     * @param size the size of the datagram
+     */
+    private void sendProbe (InetSocketAddress addr, int size) {
+        ByteBuffer frame=ByteBuffer.allocate(size);
+        frame.put(CONTROL_PROBE).putInt(size).position(size);
+        frame.flip();
+        sendDatagram(frame, addr);
+    }
+
+    /**
+     * changes the size of the datagrams sent
+     * @param size the size of the datagrams sent
+     */
+    private void setSendSize (int size) {
+        sendLock.lock();
+        try {
+            if (sendBuffer.capacity()!=size) {
+                sendBuffer=(sendBuffer.isDirect() ? ByteBuffer.allocateDirect(size) : ByteBuffer.allocate(size));
+                if (batch!=null)
+                    batch=newBatch(size, sendBuffer.isDirect());
+                if (coalesced!=null) {
+                    flush();
+                    coalesced=ByteBuffer.allocate(size-RELIABLE_HEADER-1);
+                }
+            }
+        } finally {
+            sendLock.unlock();
+        }
+    }
+
+    /**
+     * returns the pool of buffers of a size, shared by the instances
+     * @param size the size of the buffers
+     * @return BufferPool the pool of buffers
+     */
+    private static BufferPool pool (int size) {
+        return pools.computeIfAbsent(size, key -> new BufferPool(key, Math.max(8,RECEIVE_BUFFER_SIZE/key)));
+    }
+
+    /**
+     * gives back a buffer to the pool it comes from, found by its size : it isn't the current pool if the size of the datagrams has changed since it was received
+     * @param buffer the buffer or its read-only view, buffers not coming from a pool are ignored
+     */
+    private static void releaseBuffer (ByteBuffer buffer) {
+        BufferPool owner=(buffer==null ? null : pools.get(buffer.capacity()));
+        if (owner!=null)
+            owner.release(buffer);
+    }
+
+    /**
+     * sends a control frame, never in reliable mode
+     * @param addr recipient's address
+     * @param port the recipient's port
+     * @param op the opcode of the frame
+     * @param argument the int following the opcode
+     */
+    void sendControl (InetAddress addr, int port, byte op, int argument) {
+        ByteBuffer frame=ByteBuffer.allocate(CONTROL_SIZE); // the frames may be sent by the thread receiving the datagrams
+        frame.put(op).putInt(argument).flip();
+        sendDatagram(frame, new InetSocketAddress(addr, port));
+    }
+
+    /**
+     * sends bytes
+     * @param addr recipient's address
+     * @param port the recipient's port
+     * @param message bytes to send
+     */
+    public void send (InetAddress addr, int port, byte [] message) {
+        beginMessage(addr,port,80,message.length);
+        writeBytes(message);
+        endMessage();
+    }
+
+    /**
+     * sends bytes to the client or server to which we are connected
+     * @param message bytes to send
+     */
+    public void send(byte [] message) {
+        if (connected)
+            send(addrCom,portCom,message);
+        else
+            System.out.println("Impossible to send the message because you're not connected");
+    }
+
+    /**
+     * sends a String
+     * @param addr recipient's address
+     * @param port the recipient's port
+     * @param message String to send
+     */
+    public void send (InetAddress addr, int port, String message) {
+        byte [] bufferPrep=StringToByte(message);
+        beginMessage(addr,port,81,bufferPrep.length);
+        writeBytes(bufferPrep);
+        endMessage();
+    }
+
+    /**
+     * sends a String
+     * @param addr recipient's address
+     * @param port the recipient's port
+     * @param message String to send
+     */
+    public void send (String addr, int port, String message) {
+        try {
+            send(InetAddress.getByName(addr),port,message);
+        } catch (Exception e) {
+            System.out.println("Impossible to find the address of "+addr);
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * sends a String to the client or server to which we are connected
+     * @param addr recipient's address
+     * @param port the recipient's port
+     * @param message String to send
+     */
+    public void send(String message) {
+        if (connected)
+            send(addrCom,portCom,message);
+        else
+            System.out.println("Impossible to send the message because you're not connected");
+    }
+
+    /**
+     * sends an int
+     * @param addr recipient's address
+     * @param port the recipient's port
+     * @param message int to send
+     */
+    public void send (InetAddress addr, int port, int message) {
+        beginMessage(addr,port,82,Integer.BYTES);
+        writeInt(message);
+        endMessage();
+    }
+
+    /**
+     * sends an int
+     * @param addr recipient's address
+     * @param port the recipient's port
+     * @param message int to send
+     */
+    public void send (String addr, int port, int message) {
+        try {
+            send(InetAddress.getByName(addr),port,message);
+        } catch (Exception e) {
+            System.out.println("Impossible to find the address of "+addr);
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * sends an int to the client or server to which we are connected
+     * @param addr recipient's address
+     * @param port the recipient's port
+     * @param message int to send
+     */
+    public void send(int message) {
+        if (connected)
+            send(addrCom,portCom,message);
+        else
+            System.out.println("Impossible to send the message because you're not connected");
+    }
+
+    /**
+     * sends a boolean
+     * @param addr recipient's address
+     * @param port the recipient's port
+     * @param message boolean to send
+     */
+    public void send (InetAddress addr, int port, boolean message) {
+        beginMessage(addr,port,83,1);
+        writeByte((byte)(message ? 1 : 0));
+        endMessage();
+    }
+
+    /**
+     * sends a boolean
+     * @param addr recipient's address
+     * @param port the recipient's port
+     * @param message boolean to send
+     */
+    public void send (String addr, int port, boolean message) {
+        try {
+            send(InetAddress.getByName(addr),port,message);
+        } catch (Exception e) {
+            System.out.println("Impossible to find the address of "+addr);
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * sends a boolean to the client or server to which we are connected
+     * @param addr recipient's address
+     * @param port the recipient's port
+     * @param message boolean to send
+     */
+    public void send(boolean message) {
+        if (connected)
+            send(addrCom,portCom,message);
+        else
+            System.out.println("Impossible to send the message because you're not connected");
+    }
+
+    /**
+     * sends a double
+     * @param addr recipient's address
+     * @param port the recipient's port
+     * @param message double to send
+     */
+    public void send (InetAddress addr, int port, double message) {
+        beginMessage(addr,port,84,Double.BYTES);
+        writeLong(Double.doubleToRawLongBits(message));
+        endMessage();
+    }
+
+    /**
+     * sends a double
+     * @param addr recipient's address
+     * @param port the recipient's port
+     * @param message double to send
+     */
+    public void send (String addr, int port, double message) {
+        try {
+            send(InetAddress.getByName(addr),port,message);
+        } catch (Exception e) {
+            System.out.println("Impossible to find the address of "+addr);
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * sends a double to the client or server to which we are connected
+     * @param addr recipient's address
+     * @param port the recipient's port
+     * @param message double to send
+     */
+    public void send(double message) {
+        if (connected)
+            send(addrCom,portCom,message);
+        else
+            System.out.println("Impossible to send the message because you're not connected");
+    }
+
+    /**
+     * sends an array of ints
+     * @param addr recipient's address
+     * @param port the recipient's port
+     * @param message int array to send
+     */
+    public void send (InetAddress addr, int port, int [] message) {
+        beginMessage(addr,port,85,Integer.BYTES*message.length);
+        writeInts(message);
+        endMessage();
+    }
+
+    /**
+     * sends an array of ints
+     * @param addr recipient's address
+     * @param port the recipient's port
+     * @param message int array to send
+     */
+    public void send (String addr, int port, int [] message) {
+        try {
+            send(InetAddress.getByName(addr),port,message);
+        } catch (Exception e) {
+            System.out.println("Impossible to find the address of "+addr);
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * sends an array of ints to the client or server to which we are connected
+     * @param addr recipient's address
+     * @param port the recipient's port
+     * @param message int array to send
+     */
+    public void send(int [] message) {
+        if (connected)
+            send(addrCom,portCom,message);
+        else
+            System.out.println("Impossible to send the message because you're not connected");
+    }
+
+    /**
+     * sends a boolean array
+     * @param addr recipient's address
+     * @param port the recipient's port
+     * @param message boolean array to send
+     */
+    public void send (InetAddress addr, int port, boolean [] message) {
+        beginMessage(addr,port,86,1+(message.length+7)/8);
+        writeByte((byte)(1+(message.length-1)%8)); // number of booleans in the last byte
+        for (int i=0;i<message.length;i+=8) {
+            byte bits=0;
+            for (int j=i;j<Math.min(i+8,message.length);j++)
+                if (message[j])
+                    bits |= (1 << (j % 8));
+            writeByte(bits);
+        }
+        endMessage();
+    }
 
     /**
      * sends a boolean array
      * @param addr recipient's address
      * @param port the recipient's port
-     * @param message boolean array to send
+     * @param message boolean array to send
+     */
+    public void send (String addr, int port, boolean [] message) {
+        try {
+            send(InetAddress.getByName(addr),port,message);
+        } catch (Exception e) {
+            System.out.println("Impossible to find the address of "+addr);
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * sends an array of booleans to the client or server to which we are connected
+     * @param addr recipient's address
+     * @param port the recipient's port
+     * @param message boolean array to send
+     */
+    public void send(boolean [] message) {
+        if (connected)
+            send(addrCom,portCom,message);
+        else
+            System.out.println("Impossible to send the message because you're not connected");
+    }
+
+    /**
+     * sends an array of doubles
+     * @param addr recipient's address
+     * @param port the recipient's port
+     * @param message double array to send
+     */
+    public void send (InetAddress addr, int port, double [] message) {
+        beginMessage(addr,port,87,Double.BYTES*message.length);
+        writeDoubles(message);
+        endMessage();
+    }
+
+    /**
+     * sends an array of doubles
+     * @param addr recipient's address
+     * @param port the recipient's port
+     * @param message double array to send
+     */
+    public void send (String addr, int port, double [] message) {
+        try {
+            send(InetAddress.getByName(addr),port,message);
+        } catch (Exception e) {
+            System.out.println("Impossible to find the address of "+addr);
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * sends an array of doubles to the client or server to which we are connected
+     * @param addr recipient's address
+     * @param port the recipient's port
+     * @param message double array to send
+     */
+    public void send(double [] message) {
+        if (connected)
+            send(addrCom,portCom,message);
+        else
+            System.out.println("Impossible to send the message because you're not connected");
+    }
+
+    /**
+     * sends a long
+     * @param addr recipient's address
+     * @param port the recipient's port
+     * @param message long to send
+     */
+    public void send (InetAddress addr, int port, long message) {
+        beginMessage(addr,port,89,Long.BYTES);
+        writeLong(message);
+        endMessage();
+    }
+
+    /**
+     * sends a long
+     * @param addr recipient's address
+     * @param port the recipient's port
+     * @param message long to send
+     */
+    public void send (String addr, int port, long message) {
+        try {
+            send(InetAddress.getByName(addr),port,message);
+        } catch (Exception e) {
+            System.out.println("Impossible to find the address of "+addr);
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * sends a long to the client or server to which we are connected
+     * @param message long to send
+     */
+    public void send(long message) {
+        if (connected)
+            send(addrCom,portCom,message);
+        else
+            System.out.println("Impossible to send the message because you're not connected");
+    }
+
+    /**
+     * sends a float
+     * @param addr recipient's address
+     * @param port the recipient's port
+     * @param message float to send
+     */
+    public void send (InetAddress addr, int port, float message) {
+        beginMessage(addr,port,90,Float.BYTES);
+        writeInt(Float.floatToRawIntBits(message));
+        endMessage();
+    }
+
+    /**
+     * sends a float
+     * @param addr recipient's address
+     * @param port the recipient's port
+     * @param message float to send
+     */
+    public void send (String addr, int port, float message) {
+        try {
+            send(InetAddress.getByName(addr),port,message);
+        } catch (Exception e) {
+            System.out.println("Impossible to find the address of "+addr);
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * sends a float to the client or server to which we are connected
+     * @param message float to send
+     */
+    public void send(float message) {
+        if (connected)
+            send(addrCom,portCom,message);
+        else
+            System.out.println("Impossible to send the message because you're not connected");
+    }
+
+    /**
+     * sends a short
+     * @param addr recipient's address
+     * @param port the recipient's port
+     * @param message short to send
+     */
+    public void send (InetAddress addr, int port, short message) {
+        beginMessage(addr,port,91,Short.BYTES);
+        writeByte((byte)(message>>>8));
+        writeByte((byte)message);
+        endMessage();
+    }
+
+    /**
+     * sends a short
+     * @param addr recipient's address
+     * @param port the recipient's port
+     * @param message short to send
+     */
+    public void send (String addr, int port, short message) {
+        try {
+            send(InetAddress.getByName(addr),port,message);
+        } catch (Exception e) {
+            System.out.println("Impossible to find the address of "+addr);
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * sends a short to the client or server to which we are connected
+     * @param message short to send
+     */
+    public void send(short message) {
+        if (connected)
+            send(addrCom,portCom,message);
+        else
+            System.out.println("Impossible to send the message because you're not connected");
+    }
+
+    /**
+     * sends a char
+     * @param addr recipient's address
+     * @param port the recipient's port
+     * @param message char to send
+     */
+    public void send (InetAddress addr, int port, char message) {
+        beginMessage(addr,port,92,Character.BYTES);
+        writeByte((byte)(message>>>8));
+        writeByte((byte)message);
+        endMessage();
+    }
+
+    /**
+     * sends a char
+     * @param addr recipient's address
+     * @param port the recipient's port
+     * @param message char to send
+     */
+    public void send (String addr, int port, char message) {
+        try {
+            send(InetAddress.getByName(addr),port,message);
+        } catch (Exception e) {
+            System.out.println("Impossible to find the address of "+addr);
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * sends a char to the client or server to which we are connected
+     * @param message char to send
+     */
+    public void send(char message) {
+        if (connected)
+            send(addrCom,portCom,message);
+        else
+            System.out.println("Impossible to send the message because you're not connected");
+    }
+
+    /**
+     * sends an array of longs
+     * @param addr recipient's address
+     * @param port the recipient's port
+     * @param message long array to send
+     */
+    public void send (InetAddress addr, int port, long [] message) {
+        beginMessage(addr,port,93,Long.BYTES*message.length);
+        writeLongs(message);
+        endMessage();
+    }
+
+    /**
+     * sends an array of longs
+     * @param addr recipient's address
+     * @param port the recipient's port
+     * @param message long array to send
+     */
+    public void send (String addr, int port, long [] message) {
+        try {
+            send(InetAddress.getByName(addr),port,message);
+        } catch (Exception e) {
+            System.out.println("Impossible to find the address of "+addr);
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * sends an array of longs to the client or server to which we are connected
+     * @param message long array to send
+     */
+    public void send(long [] message) {
+        if (connected)
+            send(addrCom,portCom,message);
+        else
+            System.out.println("Impossible to send the message because you're not connected");
+    }
+
+    /**
+     * sends an array of floats
+     * @param addr recipient's address
+     * @param port the recipient's port
+     * @param message float array to send
+     */
+    public void send (InetAddress addr, int port, float [] message) {
+        beginMessage(addr,port,94,Float.BYTES*message.length);
+        writeFloats(message);
+        endMessage();
+    }
+
+    /**
+     * sends an array of floats
+     * @param addr recipient's address
+     * @param port the recipient's port
+     * @param message float array to send
+     */
+    public void send (String addr, int port, float [] message) {
+        try {
+            send(InetAddress.getByName(addr),port,message);
+        } catch (Exception e) {
+            System.out.println("Impossible to find the address of "+addr);
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * sends an array of floats to the client or server to which we are connected
+     * @param message float array to send
+     */
+    public void send(float [] message) {
+        if (connected)
+            send(addrCom,portCom,message);
+        else
+            System.out.println("Impossible to send the message because you're not connected");
+    }
+
+    /**
+     * sends an object of any type received by receiveObject : byte [], String, int, boolean, double, long, float, short, char, one of their arrays or an object whose class has been added with registerSerializer
+     * @param addr recipient's address
+     * @param port the recipient's port
+     * @param message object to send
+     */
+    public void sendObject (InetAddress addr, int port, Object message) {
+        if (message instanceof byte[])
+            send(addr,port,(byte[])message);
+        else if (message instanceof String)
+            send(addr,port,(String)message);
+        else if (message instanceof Integer)
+            send(addr,port,(int)(Integer)message);
+        else if (message instanceof Boolean)
+            send(addr,port,(boolean)(Boolean)message);
+        else if (message instanceof Double)
+            send(addr,port,(double)(Double)message);
+        else if (message instanceof int[])
+            send(addr,port,(int[])message);
+        else if (message instanceof boolean[])
+            send(addr,port,(boolean[])message);
+        else if (message instanceof double[])
+            send(addr,port,(double[])message);
+        else if (message instanceof Long)
+            send(addr,port,(long)(Long)message);
+        else if (message instanceof Float)
+            send(addr,port,(float)(Float)message);
+        else if (message instanceof Short)
+            send(addr,port,(short)(Short)message);
+        else if (message instanceof Character)
+            send(addr,port,(char)(Character)message);
+        else if (message instanceof long[])
+            send(addr,port,(long[])message);
+        else if (message instanceof float[])
+            send(addr,port,(float[])message);
+        else
+            sendSerialized(addr,port,message);
+    }
+
+    /**
+     * sends an object whose class has been added with registerSerializer
+     * @param addr recipient's address
+     * @param port the recipient's port
+     * @param message object to send
+     */
+    private void sendSerialized (InetAddress addr, int port, Object message) {
+        Integer type=serializedTypes.get(message.getClass());
+        if (type==null) {
+            System.out.println("Impossible to send the object because no serializer is registered for "+message.getClass().getName());
+            return;
+        }
+        sendLock.lock(); // serializeBuffer is used until the message is written
+        try {
+            ByteBuffer buffer=serialize(serializers[type], message);
+            beginMessage(addr,port,type,buffer.position());
+            writeBytes(buffer.array(),0,buffer.position());
+            endMessage();
+        } finally {
+            sendLock.unlock();
+        }
+    }
+
+    /**
+     * sends an object of any type received by receiveObject
+     * @param addr recipient's address
+     * @param port the recipient's port
+     * @param message object to send
+     */
+    public void sendObject (String addr, int port, Object message) {
+        try {
+            sendObject(InetAddress.getByName(addr),port,message);
+        } catch (Exception e) {
+            System.out.println("Impossible to find the address of "+addr);
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * sends an object of any type received by receiveObject to the client or server to which we are connected
+     * @param message object to send
+     */
+    public void sendObject(Object message) {
+        if (connected)
+            sendObject(addrCom,portCom,message);
+        else
+            System.out.println("Impossible to send the message because you're not connected");
+    }
+
+    /**
+     * sends several messages without letting the other threads send theirs between them
+     * @param sends the sends, made by the calling thread
+     */
+    void sendTogether (Runnable sends) {
+        sendLock.lock();
+        try {
+            sends.run();
+        } finally {
+            sendLock.unlock();
+        }
+    }
+
+    /**
+     * publishes a message to a group : it is converted and split into datagrams once, then each datagram is sent to the multicast group, or to each member if multicast isn't available
+     * the message is sent without acknowledgement, even in reliable mode
+     * @param group the recipients
+     * @param message the message to publish : byte [], String, int, boolean, double, long, float, short, char, one of their arrays or an object whose class has been added with registerSerializer
+     */
+    public void publish (Group group, Object message) {
+        InetSocketAddress first=(group.multicast!=null ? group.multicast : group.members.stream().findFirst().orElse(null));
+        if (first==null) // no recipient
+            return;
+        sendLock.lock();
+        try {
+            flush(); // the small messages kept are sent before
+            publishing=group;
+            sendObject(first.getAddress(),first.getPort(),message);
+        } finally {
+            publishing=null;
+            sendLock.unlock();
+        }
+    }
+
+    /**
+     * joins a multicast group to receive the messages published to it, the port must be the one of the group
+     * @param group the address of the multicast group
+     */
+    public void joinGroup (InetAddress group) {
+        joinGroup(group, null);
+    }
+
+    /**
+     * joins a multicast group to receive the messages published to it, the port must be the one of the group
+     * @param group the address of the multicast group
+     * @param networkInterface the interface on which the messages are received, null to choose the first one supporting multicast
+     */
+    public void joinGroup (InetAddress group, NetworkInterface networkInterface) {
+        try {
+            if (networkInterface==null)
+                networkInterface=multicastInterface();
+            memberships.put(group, channel.join(group, networkInterface));
+        } catch (Exception e) {
+            System.out.println("Impossible to join the multicast group "+group);
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * leaves a multicast group
+     * @param group the address of the multicast group
+     */
+    public void leaveGroup (InetAddress group) {
+        MembershipKey key=memberships.remove(group);
+        if (key!=null)
+            key.drop();
+    }
+
+    /**
+     * sets the number of routers the multicast datagrams sent can cross
+     * @param ttl the number of routers (1 to stay on the local network)
+     */
+    public void setMulticastTimeToLive (int ttl) {
+        try {
+            channel.setOption(StandardSocketOptions.IP_MULTICAST_TTL, ttl);
+        } catch (Exception e) {
+            System.out.println("Impossible to set the time to live of the multicast datagrams");
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * returns the first interface which is up and supports multicast
+     * @return NetworkInterface the interface, the loopback interface if no other one supports multicast
+     */
+    private static NetworkInterface multicastInterface () throws Exception {
+        NetworkInterface loopback=null;
+        Enumeration <NetworkInterface> interfaces=NetworkInterface.getNetworkInterfaces();
+        while (interfaces.hasMoreElements()) {
+            NetworkInterface networkInterface=interfaces.nextElement();
+            if (!networkInterface.isUp() || !networkInterface.supportsMulticast())
+                continue;
+            if (!networkInterface.isLoopback())
+                return networkInterface;
+            loopback=networkInterface;
+        }
+        if (loopback==null)
+            loopback=NetworkInterface.getByInetAddress(InetAddress.getLoopbackAddress());
+        return loopback;
+    }
+
+    /**
+     * writes an object in serializeBuffer, which is enlarged until the object fits
+     * @param serializer the serializer of the object
+     * @param message the object to write
+     * @return ByteBuffer serializeBuffer, positioned after the object
+     */
+    @SuppressWarnings("unchecked")
+    private ByteBuffer serialize (Serializer<?> serializer, Object message) {
+        if (serializeBuffer==null)
+            serializeBuffer=ByteBuffer.allocate(1024);
+        while (true) {
+            serializeBuffer.clear();
+            try {
+                ((Serializer <Object>)serializer).write(message, serializeBuffer);
+                return serializeBuffer;
+            } catch (BufferOverflowException e) {
+                serializeBuffer=ByteBuffer.allocate(2*serializeBuffer.capacity());
+            }
+        }
+    }
+
+    /**
+     * opens a stream to send bytes of any length, they are sent in messages of at most 64 KB and the stream is ended by close
+     * in reliable mode the writes wait for the recipient, the memory used doesn't depend on the length of the stream
+     * @param addr recipient's address
+     * @param port the recipient's port
+     * @return OutputStream the stream
+     */
+    public OutputStream openOutputStream (InetAddress addr, int port) {
+        return new MessageOutputStream(this, addr, port);
+    }
+
+    /**
+     * opens a stream to send bytes of any length, they are sent in messages of at most 64 KB and the stream is ended by close
+     * @param addr recipient's address
+     * @param port the recipient's port
+     * @return OutputStream the stream, null if the address is not found
+     */
+    public OutputStream openOutputStream (String addr, int port) {
+        try {
+            return openOutputStream(InetAddress.getByName(addr),port);
+        } catch (Exception e) {
+            System.out.println("Impossible to find the address of "+addr);
+            e.printStackTrace();
+        }
+        return null;
+    }
+
+    /**
+     * opens a stream to send bytes of any length to the client or server to which we are connected
+     * @return OutputStream the stream, null if we are not connected
+     */
+    public OutputStream openOutputStream () {
+        if (connected)
+            return openOutputStream(addrCom,portCom);
+        System.out.println("Impossible to open the stream because you're not connected");
+        return null;
+    }
+
+    /**
+     * sends a part of a stream
+     * @param addr recipient's address
+     * @param port the recipient's port
+     * @param chunk the array containing the part
+     * @param length the length of the part, 0 to end the stream
+     */
+    void sendStream (InetAddress addr, int port, byte[] chunk, int length) {
+        beginMessage(addr,port,STREAM,length);
+        writeBytes(chunk,0,length);
+        endMessage();
+    }
+
+    /**
+     * sends a file, it is mapped in memory and its parts are copied from the mapping into the datagrams
+     * @param addr recipient's address
+     * @param port the recipient's port
+     * @param file the file to send
+     */
+    public void sendFile (InetAddress addr, int port, Path file) {
+        try (FileChannel fileChannel=FileChannel.open(file, StandardOpenOption.READ)) {
+            long length=fileChannel.size();
+            beginMessage(addr,port,FILE,Long.BYTES);
+            writeLong(length);
+            endMessage();
+            for (long position=0;position<length;position+=MAP_SIZE) {
+                MappedByteBuffer region=fileChannel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(MAP_SIZE,length-position));
+                while (region.hasRemaining()) {
+                    int size=Math.min(STREAM_CHUNK,region.remaining());
+                    beginMessage(addr,port,STREAM,size);
+                    writeBytes(region.slice(region.position(),size));
+                    endMessage();
+                    region.position(region.position()+size);
+                }
+            }
+            beginMessage(addr,port,STREAM,0); // end of the file
+            endMessage();
+        } catch (Exception e) {
+            System.out.println("Impossible to send the file "+file);
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * sends a file
+     * @param addr recipient's address
+     * @param port the recipient's port
+     * @param file the file to send
+     */
+    public void sendFile (String addr, int port, Path file) {
+        try {
+            sendFile(InetAddress.getByName(addr),port,file);
+        } catch (Exception e) {
+            System.out.println("Impossible to find the address of "+addr);
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * sends a file to the client or server to which we are connected
+     * @param file the file to send
+     */
+    public void sendFile (Path file) {
+        if (connected)
+            sendFile(addrCom,portCom,file);
+        else
+            System.out.println("Impossible to send the file because you're not connected");
+    }
+
+    /**
+     * waits for a message to be received without copying it, the buffer must be released after use
+     * @return ByteBuffer a read-only view of the message, its first byte is the type of the message
+     */
+    public ByteBuffer receiveBuffer () {
+        return receiveBuffer(0);
+    }
+
+    /**
+     * waits for a message to be received without copying it, the buffer must be released after use
+     * @param ms maximum waiting time
+     * @return ByteBuffer a read-only view of the message, its first byte is the type of the message, null if no message has been received
+     */
+    public ByteBuffer receiveBuffer (int ms) {
+        ByteBuffer res = null;
+        if (0<=ms)
+            res=receiveMessages(ms);
+        else
+            System.out.println("Impossible to receive message because ms isn't positive");
+        return res;
+    }
+
+    /**
+     * gives back a buffer returned by receiveBuffer
+     * @param buffer the buffer to release
+     */
+    public void release (ByteBuffer buffer) {
+        if (buffer!=null)
+            releaseBuffer(buffer);
+    }
+
+    /**
+     * waits for bytes to be received
+     * @return byte [] the message received
+     */
+    public byte [] receiveBytes () {
+        return receiveBytes(0);
+    }
+
+    /**
+     * waits for bytes to be received
+     * @param ms maximum waiting time
+     * @return byte [] the message received
+     */
+    public byte [] receiveBytes (int ms) {
+        byte[] res = null;
+        if (0<=ms) {
+            ByteBuffer buffer=receiveMessages(ms);
+            if (buffer!=null) {
+                buffer.get();
+                res=toBytes(buffer);
+            }
+        }
+        else
+            System.out.println("Impossible to receive message because ms isn't positive");
+        return res;
+    }
+
+    /**
+     * waits for a String to be received
+     * @return String the message received
+     */
+    public String receiveString () {
+        return receiveString(0);
+    }
+
+    /**
+     * waits for a String to be received
+     * @param ms maximum waiting time
+     * @return String the message received
+     */
+    public String receiveString (int ms) {
+        String res = "";
+        if (0<=ms) {
+            ByteBuffer buffer=receiveMessages(ms);
+            if (buffer==null)
+                return res;
+            int type=buffer.get();
+            if (type==81)
+                res=byteToString(toBytes(buffer));
+            else {
+                System.out.println("Impossible to receive the String because the message is of type "+getType(type)+type);
+                releaseBuffer(buffer);
+            }
+        }
+        else
+            System.out.println("Impossible to receive message because ms isn't positive");
+        return res;
+    }
+
+    /**
+     * waits for an int to be received
+     * @return int the message received
+     */
+    public int receiveInt () {
+        return receiveInt(0);
+    }
+
+    /**
+     * waits for an int to be received
+     * @param ms maximum waiting time
+     * @return int the message received
+     */
+    public int receiveInt (int ms) {
+        int res = 0;
+        if (0<=ms) {
+            ByteBuffer buffer=receiveMessages(ms);
+            if (buffer==null)
+                return res;
+            int type=buffer.get();
+            if (type==82)
+                res=byteToInt(buffer);
+            else
+                System.out.println("Impossible to receive the int because the message is of type "+getType(type));
+            releaseBuffer(buffer);
+        }
+        else
+            System.out.println("Impossible to receive message because ms isn't positive");
+        return res;
+    }
+
+    /**
+     * waits for a boolean to be received
+     * @return boolean the message received
+     */
+    public boolean receiveBoolean () {
+        return receiveBoolean(0);
+    }
+
+    /**
+     * waits for a boolean to be received
+     * @param ms maximum waiting time
+     * @return boolean the message received
+     */
+    public boolean receiveBoolean (int ms) {
+        boolean res = false;
+        if (0<=ms) {
+            ByteBuffer buffer=receiveMessages(ms);
+            if (buffer==null)
+                return res;
+            int type=buffer.get();
+            if (type==83)
+                res=byteToBoolean(buffer);
+            else
+                System.out.println("Impossible to receive the boolean because the message is of type "+getType(type));
+            releaseBuffer(buffer);
+        }
+        else
+            System.out.println("Impossible to receive message because ms isn't positive");
+        return res;
+    }
+
+    /**
+     * waits for a double to be received
+     * @return double the message received
+     */
+    public double receiveDouble () {
+        return receiveDouble(0);
+    }
+
+    /**
+     * waits for a double to be received
+     * @param ms maximum waiting time
+     * @return double the message received
+     */
+    public double receiveDouble (int ms) {
+        double res = 0;
+        if (0<=ms) {
+            ByteBuffer buffer=receiveMessages(ms);
+            if (buffer==null)
+                return res;
+            int type=buffer.get();
+            if (type==84)
+                res=byteToDouble(buffer);
+            else
+                System.out.println("Impossible to receive the double because the message is of type "+getType(type));
+            releaseBuffer(buffer);
+        }
+        else
+            System.out.println("Impossible to receive message because ms isn't positive");
+        return res;
+    }
+
+    /**
+     * waits for ints to be received
+     * @return int [] the message received
+     */
+    public int [] receiveIntArray () {
+        return receiveIntArray(0);
+    }
+
+    /**
+     * waits for ints to be received
+     * @param ms maximum waiting time
+     * @return int [] the message received
+     */
+    public int [] receiveIntArray (int ms) {
+        int[] res = null;
+        if (0<=ms) {
+            ByteBuffer buffer=receiveMessages(ms);
+            if (buffer==null)
+                return res;
+            int type=buffer.get();
+            if (type==85)
+                res=byteToIntArray(buffer);
+            else
+                System.out.println("Impossible to receive the int [] because the message is of type "+getType(type));
+            releaseBuffer(buffer);
+        }
+        else
+            System.out.println("Impossible to receive message because ms isn't positive");
+        return res;
+    }
+
+    /**
+     * waits for ints to be received and writes them in an array, without allocating
+     * @param dst the array in which the ints are written, the ints after its length are lost
+     * @return int the number of ints received, -1 if no int [] has been received
+     */
+    public int receiveIntArray (int [] dst) {
+        return receiveIntArray(dst,0);
+    }
+
+    /**
+     * waits for ints to be received and writes them in an array, without allocating
+     * @param dst the array in which the ints are written, the ints after its length are lost
+     * @param ms maximum waiting time
+     * @return int the number of ints received, -1 if no int [] has been received
+     */
+    public int receiveIntArray (int [] dst, int ms) {
+        int res = -1;
+        if (0<=ms) {
+            ByteBuffer buffer=receiveMessages(ms);
+            if (buffer==null)
+                return res;
+            int type=buffer.get();
+            if (type==85 && buffer.remaining()%Integer.BYTES==0) {
+                res=buffer.remaining()/Integer.BYTES;
+                buffer.asIntBuffer().get(dst, 0, Math.min(res,dst.length));
+            }
+            else
+                System.out.println("Impossible to receive the int [] because the message is of type "+getType(type));
+            releaseBuffer(buffer);
+        }
+        else
+            System.out.println("Impossible to receive message because ms isn't positive");
+        return res;
+    }
+
+    /**
+     * waits for booleans to be received
+     * @return boolean [] the message received
+     */
+    public boolean [] receiveBooleanArray () {
+        return receiveBooleanArray(0);
+    }
+
+    /**
+     * waits for booleans to be received
+     * @param ms maximum waiting time
+     * @return boolean [] the message received
+     */
+    public boolean [] receiveBooleanArray (int ms) {
+        boolean[] res = null;
+        if (0<=ms) {
+            ByteBuffer buffer=receiveMessages(ms);
+            if (buffer==null)
+                return res;
+            int type=buffer.get();
+            if (type==86)
+                res=byteToBooleanArray(toBytes(buffer));
+            else {
+                System.out.println("Impossible to receive the boolean [] because the message is of type "+getType(type));
+                releaseBuffer(buffer);
+            }
+        }
+        else
+            System.out.println("Impossible to receive message because ms isn't positive");
+        return res;
+    }
+
+    /**
+     * waits for doubles to be received
+     * @return double [] the message received
+     */
+    public double [] receiveDoubleArray () {
+        return receiveDoubleArray(0);
+    }
+
+    /**
+     * waits for doubles to be received
+     * @param ms maximum waiting time
+     * @return double [] the message received
+     */
+    public double [] receiveDoubleArray (int ms) {
+        double[] res = null;
+        if (0<=ms) {
+            ByteBuffer buffer=receiveMessages(ms);
+            if (buffer==null)
+                return res;
+            int type=buffer.get();
+            if (type==87)
+                res=byteToDoubleArray(buffer);
+            else
+                System.out.println("Impossible to receive the double [] because the message is of type "+getType(type));
+            releaseBuffer(buffer);
+        }
+        else
+            System.out.println("Impossible to receive message because ms isn't positive");
+        return res;
+    }
+
+    /**
+     * waits for doubles to be received and writes them in an array, without allocating
+     * @param dst the array in which the doubles are written, the doubles after its length are lost
+     * @return int the number of doubles received, -1 if no double [] has been received
+     */
+    public int receiveDoubleArray (double [] dst) {
+        return receiveDoubleArray(dst,0);
+    }
+
+    /**
+     * waits for doubles to be received and writes them in an array, without allocating
+     * @param dst the array in which the doubles are written, the doubles after its length are lost
+     * @param ms maximum waiting time
+     * @return int the number of doubles received, -1 if no double [] has been received
+     */
+    public int receiveDoubleArray (double [] dst, int ms) {
+        int res = -1;
+        if (0<=ms) {
+            ByteBuffer buffer=receiveMessages(ms);
+            if (buffer==null)
+                return res;
+            int type=buffer.get();
+            if (type==87 && buffer.remaining()%Double.BYTES==0) {
+                res=buffer.remaining()/Double.BYTES;
+                buffer.asDoubleBuffer().get(dst, 0, Math.min(res,dst.length));
+            }
+            else
+                System.out.println("Impossible to receive the double [] because the message is of type "+getType(type));
+            releaseBuffer(buffer);
+        }
+        else
+            System.out.println("Impossible to receive message because ms isn't positive");
+        return res;
+    }
+
+    /**
+     * waits for a long to be received
+     * @return long the message received
+     */
+    public long receiveLong () {
+        return receiveLong(0);
+    }
+
+    /**
+     * waits for a long to be received
+     * @param ms maximum waiting time
+     * @return long the message received
+     */
+    public long receiveLong (int ms) {
+        long res = 0;
+        if (0<=ms) {
+            ByteBuffer buffer=receiveMessages(ms);
+            if (buffer==null)
+                return res;
+            int type=buffer.get();
+            if (type==89)
+                res=byteToLong(buffer);
+            else
+                System.out.println("Impossible to receive the long because the message is of type "+getType(type));
+            releaseBuffer(buffer);
+        }
+        else
+            System.out.println("Impossible to receive message because ms isn't positive");
+        return res;
+    }
+
+    /**
+     * waits for a float to be received
+     * @return float the message received
+     */
+    public float receiveFloat () {
+        return receiveFloat(0);
+    }
+
+    /**
+     * waits for a float to be received
+     * @param ms maximum waiting time
+     * @return float the message received
+     */
+    public float receiveFloat (int ms) {
+        float res = 0;
+        if (0<=ms) {
+            ByteBuffer buffer=receiveMessages(ms);
+            if (buffer==null)
+                return res;
+            int type=buffer.get();
+            if (type==90)
+                res=byteToFloat(buffer);
+            else
+                System.out.println("Impossible to receive the float because the message is of type "+getType(type));
+            releaseBuffer(buffer);
+        }
+        else
+            System.out.println("Impossible to receive message because ms isn't positive");
+        return res;
+    }
+
+    /**
+     * waits for a short to be received
+     * @return short the message received
+     */
+    public short receiveShort () {
+        return receiveShort(0);
+    }
+
+    /**
+     * waits for a short to be received
+     * @param ms maximum waiting time
+     * @return short the message received
+     */
+    public short receiveShort (int ms) {
+        short res = 0;
+        if (0<=ms) {
+            ByteBuffer buffer=receiveMessages(ms);
+            if (buffer==null)
+                return res;
+            int type=buffer.get();
+            if (type==91)
+                res=byteToShort(buffer);
+            else
+                System.out.println("Impossible to receive the short because the message is of type "+getType(type));
+            releaseBuffer(buffer);
+        }
+        else
+            System.out.println("Impossible to receive message because ms isn't positive");
+        return res;
+    }
+
+    /**
+     * waits for a char to be received
+     * @return char the message received
+     */
+    public char receiveChar () {
+        return receiveChar(0);
+    }
+
+    /**
+     * waits for a char to be received
+     * @param ms maximum waiting time
+     * @return char the message received
+     */
+    public char receiveChar (int ms) {
+        char res = '\0';
+        if (0<=ms) {
+            ByteBuffer buffer=receiveMessages(ms);
+            if (buffer==null)
+                return res;
+            int type=buffer.get();
+            if (type==92)
+                res=byteToChar(buffer);
+            else
+                System.out.println("Impossible to receive the char because the message is of type "+getType(type));
+            releaseBuffer(buffer);
+        }
+        else
+            System.out.println("Impossible to receive message because ms isn't positive");
+        return res;
+    }
+
+    /**
+     * waits for longs to be received
+     * @return long [] the message received
+     */
+    public long [] receiveLongArray () {
+        return receiveLongArray(0);
+    }
+
+    /**
+     * waits for longs to be received
+     * @param ms maximum waiting time
+     * @return long [] the message received
+     */
+    public long [] receiveLongArray (int ms) {
+        long [] res = null;
+        if (0<=ms) {
+            ByteBuffer buffer=receiveMessages(ms);
+            if (buffer==null)
+                return res;
+            int type=buffer.get();
+            if (type==93)
+                res=byteToLongArray(buffer);
+            else
+                System.out.println("Impossible to receive the long [] because the message is of type "+getType(type));
+            releaseBuffer(buffer);
+        }
+        else
+            System.out.println("Impossible to receive message because ms isn't positive");
+        return res;
+    }
+
+    /**
+     * waits for floats to be received
+     * @return float [] the message received
+     */
+    public float [] receiveFloatArray () {
+        return receiveFloatArray(0);
+    }
+
+    /**
+     * waits for floats to be received
+     * @param ms maximum waiting time
+     * @return float [] the message received
+     */
+    public float [] receiveFloatArray (int ms) {
+        float [] res = null;
+        if (0<=ms) {
+            ByteBuffer buffer=receiveMessages(ms);
+            if (buffer==null)
+                return res;
+            int type=buffer.get();
+            if (type==94)
+                res=byteToFloatArray(buffer);
+            else
+                System.out.println("Impossible to receive the float [] because the message is of type "+getType(type));
+            releaseBuffer(buffer);
+        }
+        else
+            System.out.println("Impossible to receive message because ms isn't positive");
+        return res;
+    }
+
+    /**
+     * waits for an Object to be received
+     * @return Object the message received
+     */
+    public Object receiveObject () {
+        return receiveObject(0);
+    }
+
+    /**
+     * waits for an Object to be received
+     * @param ms maximum waiting time
+     * @return Object the message received
+     */
+    public Object receiveObject (int ms) {
+        if (0<=ms) {
+            ByteBuffer buffer=receiveMessages(ms);
+            if (buffer==null)
+                return null;
+            return decodeObject(buffer);
+        }
+        else
+            System.out.println("Impossible to receive message because ms isn't positive");
+        return null;
+    }
+
+    /**
+     * waits for an object of a class to be received
+     * @param type the class of the expected object
+     * @return T the message received, null if it is of another class
+     */
+    public <T> T receiveObject (Class <T> type) {
+        return receiveObject(type,0);
+    }
+
+    /**
+     * waits for an object of a class to be received
+     * @param type the class of the expected object
+     * @param ms maximum waiting time
+     * @return T the message received, null if it is of another class
+     */
+    public <T> T receiveObject (Class <T> type, int ms) {
+        Object res=receiveObject(ms);
+        if (type.isInstance(res))
+            return type.cast(res);
+        if (res!=null)
+            System.out.println("Impossible to receive the "+type.getSimpleName()+" because the message is of another type");
+        return null;
+    }
+
+    /**
+     * returns a future completed with the next bytes received, without blocking
+     * @return CompletableFuture the message received
+     */
+    public CompletableFuture <byte[]> receiveBytesAsync () {
+        return receiveAsync(byte[].class, null, "byte []");
+    }
+
+    /**
+     * returns a future completed with the next String received, without blocking
+     * @return CompletableFuture the message received
+     */
+    public CompletableFuture <String> receiveStringAsync () {
+        return receiveAsync(String.class, "", "String");
+    }
+
+    /**
+     * returns a future completed with the next int received, without blocking
+     * @return CompletableFuture the message received
+     */
+    public CompletableFuture <Integer> receiveIntAsync () {
+        return receiveAsync(Integer.class, 0, "int");
+    }
+
+    /**
+     * returns a future completed with the next boolean received, without blocking
+     * @return CompletableFuture the message received
+     */
+    public CompletableFuture <Boolean> receiveBooleanAsync () {
+        return receiveAsync(Boolean.class, false, "boolean");
+    }
+
+    /**
+     * returns a future completed with the next double received, without blocking
+     * @return CompletableFuture the message received
+     */
+    public CompletableFuture <Double> receiveDoubleAsync () {
+        return receiveAsync(Double.class, 0.0, "double");
+    }
+
+    /**
+     * returns a future completed with the next ints received, without blocking
+     * @return CompletableFuture the message received
+     */
+    public CompletableFuture <int[]> receiveIntArrayAsync () {
+        return receiveAsync(int[].class, null, "int []");
+    }
+
+    /**
+     * returns a future completed with the next booleans received, without blocking
+     * @return CompletableFuture the message received
+     */
+    public CompletableFuture <boolean[]> receiveBooleanArrayAsync () {
+        return receiveAsync(boolean[].class, null, "boolean []");
+    }
+
+    /**
+     * returns a future completed with the next doubles received, without blocking
+     * @return CompletableFuture the message received
+     */
+    public CompletableFuture <double[]> receiveDoubleArrayAsync () {
+        return receiveAsync(double[].class, null, "double []");
+    }
+
+    /**
+     * returns a future completed with the next long received, without blocking
+     * @return CompletableFuture the message received
+     */
+    public CompletableFuture <Long> receiveLongAsync () {
+        return receiveAsync(Long.class, 0L, "long");
+    }
+
+    /**
+     * returns a future completed with the next float received, without blocking
+     * @return CompletableFuture the message received
+     */
+    public CompletableFuture <Float> receiveFloatAsync () {
+        return receiveAsync(Float.class, 0f, "float");
+    }
+
+    /**
+     * returns a future completed with the next short received, without blocking
+     * @return CompletableFuture the message received
+     */
+    public CompletableFuture <Short> receiveShortAsync () {
+        return receiveAsync(Short.class, (short)0, "short");
+    }
+
+    /**
+     * returns a future completed with the next char received, without blocking
+     * @return CompletableFuture the message received
+     */
+    public CompletableFuture <Character> receiveCharAsync () {
+        return receiveAsync(Character.class, '\0', "char");
+    }
+
+    /**
+     * returns a future completed with the next long [] received, without blocking
+     * @return CompletableFuture the message received
+     */
+    public CompletableFuture <long[]> receiveLongArrayAsync () {
+        return receiveAsync(long[].class, null, "long []");
+    }
+
+    /**
+     * returns a future completed with the next float [] received, without blocking
+     * @return CompletableFuture the message received
+     */
+    public CompletableFuture <float[]> receiveFloatArrayAsync () {
+        return receiveAsync(float[].class, null, "float []");
+    }
+
+    /**
+     * returns a future completed with the next Object received, without blocking
+     * the future is completed by the thread receiving the datagrams, the actions added to it must not wait for a message or a reliable send
+     * @return CompletableFuture the message received
+     */
+    public CompletableFuture <Object> receiveObjectAsync () {
+        startReceiver();
+        CompletableFuture <Object> res=new CompletableFuture <Object> ();
+        DatagramPacket packet;
+        synchronized (waiting) {
+            packet=received.poll();
+            if (packet==null) {
+                waiting.add(res);
+                return res;
+            }
+        }
+        if (packet.getLength()==0) // the other side has disconnected
+            res.complete(null);
+        else
+            res.complete(decodeObject(ByteBuffer.wrap(packet.getData(), 4, packet.getLength()-4)));
+        return res;
+    }
+
+    /**
+     * returns a future completed with the next object of a class received, without blocking
+     * @param type the class of the expected object
+     * @return CompletableFuture the message received, null if it is of another class
+     */
+    public <T> CompletableFuture <T> receiveObjectAsync (Class <T> type) {
+        return receiveAsync(type, null, type.getSimpleName());
+    }
+
+    /**
+     * opens a stream to receive the bytes sent by a stream opened with openOutputStream, the next messages received must be its parts
+     * only the part being read is kept in memory
+     * @return InputStream the stream
+     */
+    public InputStream openInputStream () {
+        return openInputStream(0);
+    }
+
+    /**
+     * opens a stream to receive the bytes sent by a stream opened with openOutputStream, the next messages received must be its parts
+     * @param ms maximum waiting time for each part (0 to wait indefinitely)
+     * @return InputStream the stream
+     */
+    public InputStream openInputStream (int ms) {
+        return new MessageInputStream(this, ms);
+    }
+
+    /**
+     * waits for a part of a stream
+     * @param ms maximum waiting time
+     * @return ByteBuffer a read-only view of the part, to release once read, null if no part has been received
+     */
+    ByteBuffer receiveStream (int ms) {
+        ByteBuffer buffer=receiveMessages(ms);
+        if (buffer==null)
+            return null;
+        int type=buffer.get();
+        if (type==STREAM)
+            return buffer;
+        System.out.println("Impossible to receive the stream because the message is of type "+getType(type));
+        releaseBuffer(buffer);
+        return null;
+    }
+
+    /**
+     * waits for a file sent by sendFile and writes it, each part received is copied into the file mapped in memory
+     * @param file the file to write, replaced if it exists
+     * @return long the length of the file received, -1 if it hasn't been entirely received
+     */
+    public long receiveFile (Path file) {
+        return receiveFile(file,0);
+    }
+
+    /**
+     * waits for a file sent by sendFile and writes it, each part received is copied into the file mapped in memory
+     * @param file the file to write, replaced if it exists
+     * @param ms maximum waiting time for each message
+     * @return long the length of the file received, -1 if it hasn't been entirely received
+     */
+    public long receiveFile (Path file, int ms) {
+        if (ms<0) {
+            System.out.println("Impossible to receive message because ms isn't positive");
+            return -1;
+        }
+        ByteBuffer buffer=receiveMessages(ms);
+        if (buffer==null)
+            return -1;
+        int type=buffer.get();
+        long length=-1;
+        if (type==FILE)
+            length=byteToLong(buffer);
+        else
+            System.out.println("Impossible to receive the file because the message is of type "+getType(type));
+        releaseBuffer(buffer);
+        if (length<0)
+            return -1;
+        try (FileChannel fileChannel=FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long received=0;
+            MappedByteBuffer region=null;
+            ByteBuffer chunk;
+            while ((chunk=receiveStream(ms))!=null && chunk.hasRemaining()) {
+                while (chunk.hasRemaining() && received<length) {
+                    if (region==null || !region.hasRemaining())
+                        region=fileChannel.map(FileChannel.MapMode.READ_WRITE, received, Math.min(MAP_SIZE,length-received));
+                    int size=Math.min(region.remaining(),chunk.remaining());
+                    region.put(region.position(), chunk, chunk.position(), size);
+                    region.position(region.position()+size);
+                    chunk.position(chunk.position()+size);
+                    received+=size;
+                }
+                boolean tooLong=chunk.hasRemaining();
+                releaseBuffer(chunk);
+                if (tooLong) {
+                    System.out.println("Impossible to receive the file because it is longer than announced");
+                    return -1;
+                }
+            }
+            releaseBuffer(chunk); // the end of the stream, also if a part is missing
+            if (chunk==null || received!=length) {
+                System.out.println("Impossible to receive the file because a part is missing");
+                return -1;
+            }
+            return received;
+        } catch (Exception e) {
+            System.out.println("Impossible to write the file "+file);
+            e.printStackTrace();
+        }
+        return -1;
+    }
+
+    /**
+     * calls a listener with each message received instead of waiting for them, the messages already received are given to it
+     * the listener is called by the thread receiving the datagrams, it must not wait for a message or a reliable send
+     * @param listener the listener to call, null to read the messages with the receiveX methods again
+     */
+    public void setListener (MessageListener listener) {
+        if (listener!=null)
+            startReceiver();
+        synchronized (waiting) { // the messages already received are given before the next ones
+            this.listener=listener;
+            DatagramPacket packet;
+            while (listener!=null && (packet=received.poll())!=null) {
+                if (packet.getLength()==0) // the other side has disconnected
+                    listener.onDisconnection(packet.getAddress(), packet.getPort());
+                else
+                    listener.onMessage(decodeObject(ByteBuffer.wrap(packet.getData(), 4, packet.getLength()-4)), packet.getAddress(), packet.getPort());
+            }
+        }
+    }
+
+    /**
+     * sends a request and returns at once, several requests can wait for their response at the same time
+     * the recipient answers it with its RequestHandler, the future is completed by the thread receiving the datagrams
+     * @param addr recipient's address
+     * @param port the recipient's port
+     * @param request the request, of any type sent by sendObject
+     * @return CompletableFuture the response, null for an empty response
+     */
+    public CompletableFuture <Object> call (InetAddress addr, int port, Object request) {
+        startReceiver();
+        int id=lastCall.incrementAndGet();
+        CompletableFuture <Object> res=new CompletableFuture <Object> ();
+        calls.put(id, res);
+        res.whenComplete((response, e) -> calls.remove(id)); // also when the caller gives up waiting
+        sendLock.lock();
+        try {
+            wrapType=REQUEST;
+            wrapId=id;
+            sendObject(addr,port,request);
+            if (wrapType!=0) // the request hasn't been sent
+                res.completeExceptionally(new IllegalArgumentException("Impossible to send the request of type "+request.getClass().getName()));
+        } finally {
+            wrapType=0;
+            sendLock.unlock();
+        }
+        return res;
+    }
+
+    /**
+     * sends a request to the client or server to which we are connected and returns at once
+     * @param request the request, of any type sent by sendObject
+     * @return CompletableFuture the response, null for an empty response
+     */
+    public CompletableFuture <Object> call (Object request) {
+        if (connected)
+            return call(addrCom,portCom,request);
+        System.out.println("Impossible to send the request because you're not connected");
+        return CompletableFuture.failedFuture(new IllegalStateException("not connected"));
+    }
+
+    /**
+     * answers the requests received with a handler, called by a pool of threads so several requests can be answered at the same time
+     * @param handler the handler, null to stop answering the requests
+     */
+    public void setRequestHandler (RequestHandler handler) {
+        requestHandler=handler;
+        if (handler!=null)
+            startReceiver();
+    }
+
+    /**
+     * completes the call waiting for a response received, or answers a request received
+     * @param packet the request or the response (length and type followed by the identifier and the message)
+     */
+    private void completeCall (DatagramPacket packet) {
+        ByteBuffer buffer=ByteBuffer.wrap(packet.getData(), 5, packet.getLength()-5);
+        if (buffer.remaining()<Integer.BYTES)
+            return;
+        int id=buffer.getInt();
+        Object message=(buffer.hasRemaining() ? decodeObject(buffer) : null);
+        InetAddress addr=packet.getAddress();
+        int port=packet.getPort();
+        if (packet.getData()[4]==RESPONSE) {
+            CompletableFuture <Object> call=calls.get(id);
+            if (call!=null)
+                call.complete(message);
+            return;
+        }
+        RequestHandler handler=requestHandler;
+        if (handler==null) {
+            System.out.println("Impossible to answer the request because no handler is set");
+            respond(addr,port,id,null);
+            return;
+        }
+        handlers.execute(() -> {
+            Object response=null;
+            try {
+                response=handler.onRequest(message, addr, port);
+            } catch (Exception e) {
+                System.out.println("Impossible to answer the request");
+                e.printStackTrace();
+            }
+            respond(addr,port,id,response);
+        });
+    }
+
+    /**
+     * tells the calls, the listener or the methods and futures waiting for a message that the other side has disconnected
+     * the futures waiting are completed with null, like the receiveX methods return without a message
+     * @param addr the address of the other side
+     * @param port the port of the other side
+     */
+    private void disconnected (InetAddress addr, int port) {
+        for (CompletableFuture <Object> call : calls.values()) // the responses won't come
+            call.completeExceptionally(new IllegalStateException("disconnected"));
+        MessageListener current;
+        ArrayList <CompletableFuture <Object>> futures;
+        synchronized (waiting) {
+            current=listener;
+            futures=new ArrayList <CompletableFuture <Object>> (waiting);
+            waiting.clear();
+            if (current==null) // the methods waiting for a message return, and the next ones
+                received.add(new DatagramPacket(new byte [0], 0, addr, port));
+        }
+        for (CompletableFuture <Object> future : futures)
+            future.complete(null);
+        if (current!=null)
+            current.onDisconnection(addr, port);
+    }
+
+    /**
+     * sends the response to a request
+     * @param addr the address of the sender of the request
+     * @param port the port of the sender of the request
+     * @param id the identifier of the request
+     * @param response the response, null to send an empty response
+     */
+    private void respond (InetAddress addr, int port, int id, Object response) {
+        sendLock.lock();
+        try {
+            if (response==null) {
+                beginMessage(addr,port,RESPONSE,Integer.BYTES);
+                writeInt(id);
+                endMessage();
+            }
+            else {
+                wrapType=RESPONSE;
+                wrapId=id;
+                sendObject(addr,port,response);
+            }
+        } finally {
+            wrapType=0;
+            sendLock.unlock();
+        }
+    }
+
+    /**
+     * returns a future completed with the next message received if it is of the expected type
+     * @param type the class of the expected type
+     * @param defaultValue the value given if the message is of another type
+     * @param name the name of the expected type
+     * @return CompletableFuture the message received
+     */
+    private <T> CompletableFuture <T> receiveAsync (Class <T> type, T defaultValue, String name) {
+        return receiveObjectAsync().thenApply(message -> {
+            if (message==null) // disconnected or unknown type
+                return defaultValue;
+            if (type.isInstance(message))
+                return type.cast(message);
+            System.out.println("Impossible to receive the "+name+" because the message is of another type");
+            return defaultValue;
+        });
+    }
+
+    /**
+     * converts a message received into the object of its type
+     * @param buffer the message received, positioned on its type
+     * @return Object the converted message, null if the type is unknown
+     */
+    private Object decodeObject (ByteBuffer buffer) {
+        int type=buffer.get();
+        Object res=null;
+        if (type<0 || types.length<=type || types[type]==null)
+            System.out.println("Impossible to receive the object because the message is of type unknown");
+        else {
+            try {
+                res=types[type].decoder.apply(this, buffer);
+            } catch (Exception e) {
+                System.out.println("Impossible to read the message of type "+getType(type));
+                e.printStackTrace();
+            }
+        }
+        releaseBuffer(buffer);
+        return res;
+    }
+
+    /**
+     * copies the remaining bytes of a received message and releases it
+     * @param buffer the message received
+     * @return byte [] the remaining bytes
+     */
+    private byte[] toBytes (ByteBuffer buffer) {
+        byte[] res=new byte [buffer.remaining()];
+        buffer.get(res);
+        releaseBuffer(buffer);
+        return res;
+    }
+
+    /**
+     * converts a String into bytes
+     * @param message the message to convert
+     * @return byte [] the converted message
+     */
+    public byte[] StringToByte (String message) {
+        return message.getBytes();
+    }
+
+    /**
+     * converts bytes into a String
+     * @param buffer the message to convert
+     * @return String the converted message
+     */
+    public String byteToString (byte[] buffer) {
+        return new String(buffer, 0, buffer.length);
+    }
+
+    /**
+     * converts an int into bytes
+     * @param message the message to convert
+     * @return byte [] the converted message
+     */
+    public byte[] intToByte (int message) {
+        byte[] buffer = new byte[Integer.BYTES];
+        ByteBuffer byteBuffer = ByteBuffer.wrap(buffer);
+        byteBuffer.putInt(message);
+        return buffer;
+    }
+
+    /**
+     * converts bytes into an int
+     * @param buffer the message to convert
+     * @return int the converted message
+     */
+    public int byteToInt (byte[] buffer) {
+        if (buffer.length!=Integer.BYTES) {
+            System.out.println("Impossible to convert the message to int");
+            return 0;
+        }
+        return ByteBuffer.wrap(buffer).getInt();
+    }
+
+    /**
+     * reads an int in a received message
+     * @param buffer the message to convert
+     * @return int the converted message
+     */
+    public int byteToInt (ByteBuffer buffer) {
+        if (buffer.remaining()!=Integer.BYTES) {
+            System.out.println("Impossible to convert the message to int");
+            return 0;
+        }
+        return buffer.getInt();
+    }
+
+    /**
+     * converts a boolean into bytes
+     * @param message the message to convert
+     * @return byte [] the converted message
+     */
+    public byte[] booleanToByte (boolean message) {
+        byte[] buffer = new byte[1];
+        buffer[0]=(byte)(message ? 1 : 0);
+        return buffer;
+    }
+
+    /**
+     * converts bytes into a boolean
+     * @param buffer the message to convert
+     * @return boolean the converted message
+     */
+    public boolean byteToBoolean (byte[] buffer) {
+        if (buffer.length!=1) {
+            System.out.println("Impossible to convert the message to boolean");
+            return false;
+        }
+        return buffer[0]!=0;
+    }
+
+    /**
+     * reads a boolean in a received message
+     * @param buffer the message to convert
+     * @return boolean the converted message
      */
-    public void send (InetAddress addr, int port, boolean [] message) {
-        byte [] bufferPrep=booleanArrayToByte(message);
-        byte[] buffer=new byte [bufferPrep.length+1];
-        buffer[0]=86;
-        System.arraycopy(bufferPrep, 0, buffer, 1, buffer.length-1);
-        sendMessages(addr,port,buffer);
+    public boolean byteToBoolean (ByteBuffer buffer) {
+        if (buffer.remaining()!=1) {
+            System.out.println("Impossible to convert the message to boolean");
+            return false;
+        }
+        return buffer.get()!=0;
     }
 
     /**
-     * sends a boolean array
-     * @param addr recipient's address
-     * @param port the recipient's port
-     * @param message boolean array to send
+     * converts a double into bytes
+     * @param message the message to convert
+     * @return byte [] the converted message
      */
-    public void send (String addr, int port, boolean [] message) {
-        try {
-            send(InetAddress.getByName(addr),port,message);
-        } catch (Exception e) {
-            System.out.println("Impossible to find the address of "+addr);
-            e.printStackTrace();
+    public byte[] doubleToByte (double message) {
+        byte[] buffer = new byte[Double.BYTES];
+        ByteBuffer byteBuffer = ByteBuffer.wrap(buffer);
+        byteBuffer.putDouble(message);
+        return buffer;
+    }
+
+    /**
+     * converts bytes into a double
+     * @param buffer the message to convert
+     * @return double the converted message
+     */
+    public double byteToDouble (byte[] buffer) {
+        if (buffer.length!=Double.BYTES) {
+            System.out.println("Impossible to convert the message to double");
+            return 0;
         }
+        return ByteBuffer.wrap(buffer).getDouble();
     }
 
     /**
-     * sends an array of booleans to the client or server to which we are connected
-     * @param addr recipient's address
-     * @param port the recipient's port
-     * @param message boolean array to send
+     * reads a double in a received message
+     * @param buffer the message to convert
+     * @return double the converted message
      */
-    public void send(boolean [] message) {
-        if (connected)
-            send(addrCom,portCom,message);
-        else
-            System.out.println("Impossible to send the message because you're not connected");
+    public double byteToDouble (ByteBuffer buffer) {
+        if (buffer.remaining()!=Double.BYTES) {
+            System.out.println("Impossible to convert the message to double");
+            return 0;
+        }
+        return buffer.getDouble();
+    }
+
+    /**
+     * converts ints into bytes
+     * @param message the message to convert
+     * @return byte [] the converted message
+     */
+    public byte[] intArrayToByte (int [] message) {
+        byte[] buffer = new byte[Integer.BYTES*message.length];
+        ByteBuffer.wrap(buffer).asIntBuffer().put(message);
+        return buffer;
+    }
+
+    /**
+     * converts bytes into ints
+     * @param buffer the message to convert
+     * @return int [] the converted message
+     */
+    public int [] byteToIntArray (byte[] buffer) {
+        if (buffer.length%Integer.BYTES!=0) {
+            System.out.println("Impossible to convert the message to int []");
+            return null;
+        }
+        return byteToIntArray(ByteBuffer.wrap(buffer));
+    }
+
+    /**
+     * reads ints in a received message
+     * @param buffer the message to convert
+     * @return int [] the converted message
+     */
+    public int [] byteToIntArray (ByteBuffer buffer) {
+        if (buffer.remaining()%Integer.BYTES!=0) {
+            System.out.println("Impossible to convert the message to int []");
+            return null;
+        }
+        int [] res=new int [buffer.remaining()/Integer.BYTES];
+        buffer.asIntBuffer().get(res);
+        return res;
+    }
+
+    /**
+     * converts booleans into bytes
+     * @param message the message to convert
+     * @return byte [] the converted message
+     */
+    public byte[] booleanArrayToByte (boolean [] message) {
+        byte[] res = new byte [1+(message.length+7)/8];
+        res[0]=(byte)(1+(message.length-1)%8); // number of booleans in the last byte
+        for (int i = 0; i < message.length; i++)
+            if (message[i])
+                res[1+i/8] |= (1 << (i % 8));
+        return res;
+    }
+
+    /**
+     * converts bytes into booleans
+     * @param buffer the message to convert
+     * @return boolean [] the converted message
+     */
+    public boolean [] byteToBooleanArray (byte[] buffer) {
+        if (buffer.length<=1) {
+            System.out.println("Impossible to convert the message to boolean []");
+            return null;
+        }
+        int lengthLast = buffer[0]; // number of booleans in the last byte
+        if (lengthLast<1 || 8<lengthLast) {
+            System.out.println("Impossible to convert the message to boolean []");
+            return null;
+        }
+        boolean [] res=new boolean [8*(buffer.length-2)+lengthLast];
+        for (int i=0;i<res.length;i++)
+            res[i]=( (buffer[1+i/8] & (1 << (i%8)))!=0 );
+        return res;
+    }
+
+    /**
+     * converts doubles into bytes
+     * @param message the message to convert
+     * @return byte [] the converted message
+     */
+    public byte[] doubleArrayToByte (double [] message) {
+        byte[] buffer = new byte[Double.BYTES*message.length];
+        ByteBuffer.wrap(buffer).asDoubleBuffer().put(message);
+        return buffer;
+    }
+
+    /**
+     * converts bytes into doubles
+     * @param buffer the message to convert
+     * @return double [] the converted message
+     */
+    public double [] byteToDoubleArray (byte[] buffer) {
+        if (buffer.length%Double.BYTES!=0) {
+            System.out.println("Impossible to convert the message to double []");
+            return null;
+        }
+        return byteToDoubleArray(ByteBuffer.wrap(buffer));
+    }
+
+    /**
+     * reads doubles in a received message
+     * @param buffer the message to convert
+     * @return double [] the converted message
+     */
+    public double [] byteToDoubleArray (ByteBuffer buffer) {
+        if (buffer.remaining()%Double.BYTES!=0) {
+            System.out.println("Impossible to convert the message to double []");
+            return null;
+        }
+        double [] res=new double [buffer.remaining()/Double.BYTES];
+        buffer.asDoubleBuffer().get(res);
+        return res;
+    }
+
+    /**
+     * converts a long into bytes
+     * @param message the message to convert
+     * @return byte [] the converted message
+     */
+    public byte[] longToByte (long message) {
+        byte[] buffer = new byte[Long.BYTES];
+        ByteBuffer.wrap(buffer).putLong(message);
+        return buffer;
+    }
+
+    /**
+     * converts bytes into a long
+     * @param buffer the message to convert
+     * @return long the converted message
+     */
+    public long byteToLong (byte[] buffer) {
+        return byteToLong(ByteBuffer.wrap(buffer));
+    }
+
+    /**
+     * reads a long in a received message
+     * @param buffer the message to convert
+     * @return long the converted message
+     */
+    public long byteToLong (ByteBuffer buffer) {
+        if (buffer.remaining()!=Long.BYTES) {
+            System.out.println("Impossible to convert the message to long");
+            return 0;
+        }
+        return buffer.getLong();
+    }
+
+    /**
+     * converts a float into bytes
+     * @param message the message to convert
+     * @return byte [] the converted message
+     */
+    public byte[] floatToByte (float message) {
+        byte[] buffer = new byte[Float.BYTES];
+        ByteBuffer.wrap(buffer).putFloat(message);
+        return buffer;
+    }
+
+    /**
+     * converts bytes into a float
+     * @param buffer the message to convert
+     * @return float the converted message
+     */
+    public float byteToFloat (byte[] buffer) {
+        return byteToFloat(ByteBuffer.wrap(buffer));
+    }
+
+    /**
+     * reads a float in a received message
+     * @param buffer the message to convert
+     * @return float the converted message
+     */
+    public float byteToFloat (ByteBuffer buffer) {
+        if (buffer.remaining()!=Float.BYTES) {
+            System.out.println("Impossible to convert the message to float");
+            return 0;
+        }
+        return buffer.getFloat();
+    }
+
+    /**
+     * converts a short into bytes
+     * @param message the message to convert
+     * @return byte [] the converted message
+     */
+    public byte[] shortToByte (short message) {
+        byte[] buffer = new byte[Short.BYTES];
+        ByteBuffer.wrap(buffer).putShort(message);
+        return buffer;
+    }
+
+    /**
+     * converts bytes into a short
+     * @param buffer the message to convert
+     * @return short the converted message
+     */
+    public short byteToShort (byte[] buffer) {
+        return byteToShort(ByteBuffer.wrap(buffer));
+    }
+
+    /**
+     * reads a short in a received message
+     * @param buffer the message to convert
+     * @return short the converted message
+     */
+    public short byteToShort (ByteBuffer buffer) {
+        if (buffer.remaining()!=Short.BYTES) {
+            System.out.println("Impossible to convert the message to short");
+            return 0;
+        }
+        return buffer.getShort();
+    }
+
+    /**
+     * converts a char into bytes
+     * @param message the message to convert
+     * @return byte [] the converted message
+     */
+    public byte[] charToByte (char message) {
+        byte[] buffer = new byte[Character.BYTES];
+        ByteBuffer.wrap(buffer).putChar(message);
+        return buffer;
+    }
+
+    /**
+     * converts bytes into a char
+     * @param buffer the message to convert
+     * @return char the converted message
+     */
+    public char byteToChar (byte[] buffer) {
+        return byteToChar(ByteBuffer.wrap(buffer));
+    }
+
+    /**
+     * reads a char in a received message
+     * @param buffer the message to convert
+     * @return char the converted message
+     */
+    public char byteToChar (ByteBuffer buffer) {
+        if (buffer.remaining()!=Character.BYTES) {
+            System.out.println("Impossible to convert the message to char");
+            return 0;
+        }
+        return buffer.getChar();
+    }
+
+    /**
+     * converts longs into bytes
+     * @param message the message to convert
+     * @return byte [] the converted message
+     */
+    public byte[] longArrayToByte (long [] message) {
+        byte[] buffer = new byte[Long.BYTES*message.length];
+        ByteBuffer.wrap(buffer).asLongBuffer().put(message);
+        return buffer;
+    }
+
+    /**
+     * converts bytes into longs
+     * @param buffer the message to convert
+     * @return long [] the converted message
+     */
+    public long [] byteToLongArray (byte[] buffer) {
+        return byteToLongArray(ByteBuffer.wrap(buffer));
+    }
+
+    /**
+     * reads longs in a received message
+     * @param buffer the message to convert
+     * @return long [] the converted message
+     */
+    public long [] byteToLongArray (ByteBuffer buffer) {
+        if (buffer.remaining()%Long.BYTES!=0) {
+            System.out.println("Impossible to convert the message to long []");
+            return null;
+        }
+        long [] res=new long [buffer.remaining()/Long.BYTES];
+        buffer.asLongBuffer().get(res);
+        return res;
+    }
+
+    /**
+     * converts floats into bytes
+     * @param message the message to convert
+     * @return byte [] the converted message
+     */
+    public byte[] floatArrayToByte (float [] message) {
+        byte[] buffer = new byte[Float.BYTES*message.length];
+        ByteBuffer.wrap(buffer).asFloatBuffer().put(message);
+        return buffer;
     }
 
     /**
-     * sends an array of doubles
-     * @param addr recipient's address
-     * @param port the recipient's port
-     * @param message double array to send
+     * converts bytes into floats
+     * @param buffer the message to convert
+     * @return float [] the converted message
      */
-    public void send (InetAddress addr, int port, double [] message) {
-        byte [] bufferPrep=doubleArrayToByte(message);
-        byte[] buffer=new byte [bufferPrep.length+1];
-        buffer[0]=87;
-        System.arraycopy(bufferPrep, 0, buffer, 1, buffer.length-1);
-        sendMessages(addr,port,buffer);
+    public float [] byteToFloatArray (byte[] buffer) {
+        return byteToFloatArray(ByteBuffer.wrap(buffer));
     }
 
     /**
-     * sends an array of doubles
-     * @param addr recipient's address
-     * @param port the recipient's port
-     * @param message double array to send
+     * reads floats in a received message
+     * @param buffer the message to convert
+     * @return float [] the converted message
      */
-    public void send (String addr, int port, double [] message) {
-        try {
-            send(InetAddress.getByName(addr),port,message);
-        } catch (Exception e) {
-            System.out.println("Impossible to find the address of "+addr);
-            e.printStackTrace();
+    public float [] byteToFloatArray (ByteBuffer buffer) {
+        if (buffer.remaining()%Float.BYTES!=0) {
+            System.out.println("Impossible to convert the message to float []");
+            return null;
         }
+        float [] res=new float [buffer.remaining()/Float.BYTES];
+        buffer.asFloatBuffer().get(res);
+        return res;
     }
 
     /**
-     * sends an array of doubles to the client or server to which we are connected
-     * @param addr recipient's address
-     * @param port the recipient's port
-     * @param message double array to send
+     * reads a String in a received message
+     * @param buffer the message to convert
+     * @return String the converted message
      */
-    public void send(double [] message) {
-        if (connected)
-            send(addrCom,portCom,message);
-        else
-            System.out.println("Impossible to send the message because you're not connected");
+    public String byteToString (ByteBuffer buffer) {
+        byte[] res=new byte [buffer.remaining()];
+        buffer.get(res);
+        return byteToString(res);
     }
 
     /**
-     * waits for bytes to be received
-     * @return byte [] the message received
+     * reads booleans in a received message
+     * @param buffer the message to convert
+     * @return boolean [] the converted message
      */
-    public byte [] receiveBytes () {
-        return receiveBytes(0);
+    public boolean [] byteToBooleanArray (ByteBuffer buffer) {
+        byte[] res=new byte [buffer.remaining()];
+        buffer.get(res);
+        return byteToBooleanArray(res);
     }
 
     /**
-     * waits for bytes to be received
-     * @param ms maximum waiting time
-     * @return byte [] the message received
+     * converts the number into an object type
+     * @param type the number to convert
+     * @return String the corresponding type
      */
-    public byte [] receiveBytes (int ms) {
-        byte[] res = null;
-        if (0<=ms) {
-            byte[] buffer=receiveMessages(ms);
-            res=Arrays.copyOfRange(buffer, 1, buffer.length);
-        }
-        else
-            System.out.println("Impossible to receive message because ms isn't positive");
-        return res;
+    private String getType (int type) {
+        if (type<0 || types.length<=type || types[type]==null)
+            return "unknown";
+        return types[type].name;
     }
 
     /**
-     * waits for a String to be received
-     * @return String the message received
+     * starts writing a message in the send buffer
+     * @param addr recipient's address
+     * @param port the recipient's port
+     * @param type the type of the message
+     * @param length the length of the message without its type
      */
-    public String receiveString () {
-        return receiveString(0);
+    private void beginMessage (InetAddress addr, int port, int type, int length) {
+        sendLock.lock();
+        if (wrapType==0) {
+            beginFrame(addr,port,type,length);
+            return;
+        }
+        int outerType=wrapType; // the message is sent in a request or a response : the identifier and the type are written before it
+        wrapType=0;
+        beginFrame(addr,port,outerType,Integer.BYTES+1+length);
+        writeInt(wrapId);
+        writeByte((byte)type);
     }
 
     /**
-     * waits for a String to be received
-     * @param ms maximum waiting time
-     * @return String the message received
+     * starts writing a message in the send buffer, sendLock is held
+     * @param addr recipient's address
+     * @param port the recipient's port
+     * @param type the type of the message
+     * @param length the length of the message without its type
      */
-    public String receiveString (int ms) {
-        String res = "";
-        if (0<=ms) {
-            byte[] buffer=receiveMessages(ms);
-            int type=buffer[0];
-            if (getType(type).equals("String"))
-                res=byteToString(Arrays.copyOfRange(buffer, 1, buffer.length));
-            else
-                System.out.println("Impossible to receive the String because the message is of type "+getType(type)+type);
+    private void beginFrame (InetAddress addr, int port, int type, int length) {
+        if (!encoding && type<ENCODED && codecOfType[type]!=0 && CODEC_THRESHOLD<=length) { // the payload is written to be encoded
+            if (recipient==null || recipient.getPort()!=port || !recipient.getAddress().equals(addr))
+                recipient=new InetSocketAddress(addr, port);
+            if (codecBuffer==null || codecBuffer.capacity()<length)
+                codecBuffer=ByteBuffer.allocate(Math.max(length,1024));
+            codecBuffer.clear();
+            codecType=type;
+            encoder=codecBuffer;
+            return;
         }
-        else
-            System.out.println("Impossible to receive message because ms isn't positive");
-        return res;
+        if (coalesced!=null && publishing==null) {
+            if (5+length<=coalesced.capacity()) { // small message, kept to be sent with the next ones
+                if (5+length>coalesced.remaining() || (0<coalesced.position() && (coalescedTo.getPort()!=port || !coalescedTo.getAddress().equals(addr))))
+                    flush();
+                if (coalesced.position()==0) {
+                    coalescedTo=new InetSocketAddress(addr, port);
+                    timer.schedule(() -> handlers.execute(this::flush), coalescingDelay, TimeUnit.MILLISECONDS);
+                }
+                encoder=coalesced;
+                encoder.putInt(1+length);
+                encoder.put((byte)type);
+                return;
+            }
+            flush(); // the messages are received in the order they are sent
+        }
+        if (recipient==null || recipient.getPort()!=port || !recipient.getAddress().equals(addr))
+            recipient=new InetSocketAddress(addr, port);
+        if (reliable && publishing==null) {
+            if (messageBuffer==null || messageBuffer.capacity()<1+length)
+                messageBuffer=ByteBuffer.allocate(Math.max(1+length,1024));
+            encoder=messageBuffer;
+            encoder.clear();
+        }
+        else {
+            encoder=(batch!=null ? batch[0] : sendBuffer);
+            encoder.clear();
+            encoder.putInt(1+length);
+        }
+        encoder.put((byte)type);
     }
 
     /**
-     * waits for an int to be received
-     * @return int the message received
+     * writes a byte of the message, the send buffer is sent when it is full
+     * @param message the byte to write
      */
-    public int receiveInt () {
-        return receiveInt(0);
+    private void writeByte (byte message) {
+        if (!encoder.hasRemaining())
+            sendFragment();
+        encoder.put(message);
     }
 
     /**
-     * waits for an int to be received
-     * @param ms maximum waiting time
-     * @return int the message received
+     * writes an int of the message, the send buffer is sent when it is full
+     * @param message the int to write
      */
-    public int receiveInt (int ms) {
-        int res = 0;
-        if (0<=ms) {
-            byte[] buffer=receiveMessages(ms);
-            int type=buffer[0];
-            if (getType(type).equals("int"))
-                res=byteToInt(Arrays.copyOfRange(buffer, 1, buffer.length));
-            else
-                System.out.println("Impossible to receive the int because the message is of type "+getType(type));
+    private void writeInt (int message) {
+        if (encoder.remaining()<Integer.BYTES) {
+            for (int shift=24;0<=shift;shift-=8)
+                writeByte((byte)(message>>>shift));
         }
         else
-            System.out.println("Impossible to receive message because ms isn't positive");
-        return res;
+            encoder.putInt(message);
     }
 
     /**
-     * waits for a boolean to be received
-     * @return boolean the message received
+     * writes a long of the message, the send buffer is sent when it is full
+     * @param message the long to write
      */
-    public boolean receiveBoolean () {
-        return receiveBoolean(0);
+    private void writeLong (long message) {
+        if (encoder.remaining()<Long.BYTES) {
+            for (int shift=56;0<=shift;shift-=8)
+                writeByte((byte)(message>>>shift));
+        }
+        else
+            encoder.putLong(message);
     }
 
     /**
-     * waits for a boolean to be received
-     * @param ms maximum waiting time
-     * @return boolean the message received
+     * writes ints of the message, copied by blocks through an IntBuffer view of the send buffer, which is sent each time it is full
+     * @param message the ints to write
      */
-    public boolean receiveBoolean (int ms) {
-        boolean res = false;
-        if (0<=ms) {
-            byte[] buffer=receiveMessages(ms);
-            int type=buffer[0];
-            if (getType(type).equals("boolean"))
-                res=byteToBoolean(Arrays.copyOfRange(buffer, 1, buffer.length));
-            else
-                System.out.println("Impossible to receive the boolean because the message is of type "+getType(type));
+    private void writeInts (int[] message) {
+        int written=0;
+        while (written<message.length) {
+            int count=Math.min(encoder.remaining()/Integer.BYTES,message.length-written);
+            if (count==0) // the int is split between two datagrams
+                writeInt(message[written++]);
+            else {
+                encoder.asIntBuffer().put(message, written, count);
+                encoder.position(encoder.position()+count*Integer.BYTES);
+                written+=count;
+            }
         }
-        else
-            System.out.println("Impossible to receive message because ms isn't positive");
-        return res;
     }
 
     /**
-     * waits for a double to be received
-     * @return double the message received
+     * writes doubles of the message, copied by blocks through a DoubleBuffer view of the send buffer, which is sent each time it is full
+     * @param message the doubles to write
      */
-    public double receiveDouble () {
-        return receiveDouble(0);
+    private void writeDoubles (double[] message) {
+        int written=0;
+        while (written<message.length) {
+            int count=Math.min(encoder.remaining()/Double.BYTES,message.length-written);
+            if (count==0) // the double is split between two datagrams
+                writeLong(Double.doubleToRawLongBits(message[written++]));
+            else {
+                encoder.asDoubleBuffer().put(message, written, count);
+                encoder.position(encoder.position()+count*Double.BYTES);
+                written+=count;
+            }
+        }
     }
 
     /**
-     * waits for a double to be received
-     * @param ms maximum waiting time
-     * @return double the message received
+     * writes longs of the message, copied by blocks through a LongBuffer view of the send buffer, which is sent each time it is full
+     * @param message the longs to write
      */
-    public double receiveDouble (int ms) {
-        double res = 0;
-        if (0<=ms) {
-            byte[] buffer=receiveMessages(ms);
-            int type=buffer[0];
-            if (getType(type).equals("double"))
-                res=byteToDouble(Arrays.copyOfRange(buffer, 1, buffer.length));
-            else
-                System.out.println("Impossible to receive the double because the message is of type "+getType(type));
+    private void writeLongs (long[] message) {
+        int written=0;
+        while (written<message.length) {
+            int count=Math.min(encoder.remaining()/Long.BYTES,message.length-written);
+            if (count==0) // the long is split between two datagrams
+                writeLong(message[written++]);
+            else {
+                encoder.asLongBuffer().put(message, written, count);
+                encoder.position(encoder.position()+count*Long.BYTES);
+                written+=count;
+            }
         }
-        else
-            System.out.println("Impossible to receive message because ms isn't positive");
-        return res;
     }
 
     /**
-     * waits for ints to be received
-     * @return int [] the message received
+     * writes floats of the message, copied by blocks through a FloatBuffer view of the send buffer, which is sent each time it is full
+     * @param message the floats to write
      */
-    public int [] receiveIntArray () {
-        return receiveIntArray(0);
+    private void writeFloats (float[] message) {
+        int written=0;
+        while (written<message.length) {
+            int count=Math.min(encoder.remaining()/Float.BYTES,message.length-written);
+            if (count==0) // the float is split between two datagrams
+                writeInt(Float.floatToRawIntBits(message[written++]));
+            else {
+                encoder.asFloatBuffer().put(message, written, count);
+                encoder.position(encoder.position()+count*Float.BYTES);
+                written+=count;
+            }
+        }
     }
 
     /**
-     * waits for ints to be received
-     * @param ms maximum waiting time
-     * @return int [] the message received
+     * writes the remaining bytes of a buffer, the send buffer is sent each time it is full
+     * @param message the bytes to write
      */
-    public int [] receiveIntArray (int ms) {
-        int[] res = null;
-        if (0<=ms) {
-            byte[] buffer=receiveMessages(ms);
-            int type=buffer[0];
-            if (getType(type).equals("int []"))
-                res=byteToIntArray(Arrays.copyOfRange(buffer, 1, buffer.length));
-            else
-                System.out.println("Impossible to receive the int [] because the message is of type "+getType(type));
+    private void writeBytes (ByteBuffer message) {
+        while (message.hasRemaining()) {
+            if (!encoder.hasRemaining())
+                sendFragment();
+            int space=Math.min(encoder.remaining(),message.remaining());
+            encoder.put(encoder.position(), message, message.position(), space);
+            encoder.position(encoder.position()+space);
+            message.position(message.position()+space);
         }
-        else
-            System.out.println("Impossible to receive message because ms isn't positive");
-        return res;
     }
 
     /**
-     * waits for booleans to be received
-     * @return boolean [] the message received
+     * writes bytes of the message, the send buffer is sent each time it is full
+     * @param message the bytes to write
      */
-    public boolean [] receiveBooleanArray () {
-        return receiveBooleanArray(0);
+    private void writeBytes (byte[] message) {
+        writeBytes(message,0,message.length);
     }
 
     /**
-     * waits for booleans to be received
-     * @param ms maximum waiting time
-     * @return boolean [] the message received
+     * writes bytes of the message, the send buffer is sent each time it is full
+     * @param message the bytes to write
+     * @param offset the position of the first byte to write
+     * @param length the number of bytes to write
      */
-    public boolean [] receiveBooleanArray (int ms) {
-        boolean[] res = null;
-        if (0<=ms) {
-            byte[] buffer=receiveMessages(ms);
-            int type=buffer[0];
-            if (getType(type).equals("int"))
-                res=byteToBooleanArray(Arrays.copyOfRange(buffer, 1, buffer.length));
-            else
-                System.out.println("Impossible to receive the boolean [] because the message is of type "+getType(type));
+    private void writeBytes (byte[] message, int offset, int length) {
+        int written=0;
+        while (written<length) {
+            if (!encoder.hasRemaining())
+                sendFragment();
+            int space=Math.min(encoder.remaining(),length-written);
+            encoder.put(message, offset+written, space);
+            written+=space;
         }
-        else
-            System.out.println("Impossible to receive message because ms isn't positive");
-        return res;
     }
 
     /**
-     * waits for doubles to be received
-     * @return double [] the message received
+     * sends the end of the message
      */
-    public double [] receiveDoubleArray () {
-        return receiveDoubleArray(0);
+    private void endMessage () {
+        try {
+            if (encoder==codecBuffer)
+                sendEncoded();
+            else if (encoder==coalesced) {
+                if (coalesced.remaining()<5+Double.BYTES) // no space for another small message
+                    flush();
+            }
+            else if (encoder==messageBuffer) {
+                messageBuffer.flip();
+                sendReliable();
+            }
+            else {
+                if (0<encoder.position())
+                    sendFragment();
+                if (batch!=null)
+                    flushBatch();
+            }
+        } finally {
+            sendLock.unlock();
+        }
     }
 
     /**
-     * waits for doubles to be received
-     * @param ms maximum waiting time
-     * @return double [] the message received
+     * sends the content of the send buffer (max length = the size of the datagrams), or keeps it in the batch and writes the next datagram
      */
-    public double [] receiveDoubleArray (int ms) {
-        double[] res = null;
-        if (0<=ms) {
-            byte[] buffer=receiveMessages(ms);
-            int type=buffer[0];
-            if (getType(type).equals("double []"))
-                res=byteToDoubleArray(Arrays.copyOfRange(buffer, 1, buffer.length));
-            else
-                System.out.println("Impossible to receive the double [] because the message is of type "+getType(type));
+    private void sendFragment () {
+        if (batch!=null) {
+            batchSize++;
+            if (batchSize==batch.length)
+                flushBatch();
+            encoder=batch[batchSize];
+            encoder.clear();
+            return;
         }
-        else
-            System.out.println("Impossible to receive message because ms isn't positive");
-        return res;
+        sendBuffer.flip();
+        sendData(sendBuffer);
+        sendBuffer.clear();
     }
 
     /**
-     * waits for an Object to be received
-     * @return Object the message received
+     * sends the datagrams of the batch, one system call each
      */
-    public Object receiveObject () {
-        return receiveObject(0);
+    private void flushBatch () {
+        for (int i=0;i<batchSize;i++) {
+            batch[i].flip();
+            sendData(batch[i]);
+        }
+        batchSize=0;
     }
 
     /**
-     * waits for an Object to be received
-     * @param ms maximum waiting time
-     * @return Object the message received
+     * sends a datagram of the message being written, to its recipient or to the group it is published to
+     * @param buffer the datagram to send (max length = the size of the datagrams)
      */
-    public Object receiveObject (int ms) {
-        if (0<=ms) {
-            byte[] buffer=receiveMessages(ms);
-            int type=buffer[0];
-            byte[] res=Arrays.copyOfRange(buffer, 1, buffer.length);
-            switch (getType(type)) {
-                case "byte []":return res;
-                case "String":return byteToString(res);
-                case "int":return byteToInt(res);
-                case "boolean":return byteToBoolean(res);
-                case "double":return byteToDouble(res);
-                case "int []":return byteToIntArray(res);
-                case "boolean []":return byteToBooleanArray(res);
-                case "double []":return byteToDoubleArray(res);
-                default: System.out.println("Impossible to receive the object because the message is of type unknown");
-            }
-        }
+    private void sendData (ByteBuffer buffer) {
+        if (publishing!=null)
+            publishDatagram(buffer);
         else
-            System.out.println("Impossible to receive message because ms isn't positive");
-        return null;
+            sendDatagram(buffer, recipient);
     }
 
     /**
-     * converts a String into bytes
-     * @param message the message to convert
-     * @return byte [] the converted message
+     * sends a datagram
+     * @param buffer the datagram to send (max length = the size of the datagrams)
+     * @param addr the address and the port of the recipient
      */
-    public byte[] StringToByte (String message) {
-        return message.getBytes();
+    private void sendDatagram (ByteBuffer buffer, InetSocketAddress addr) {
+        try {
+            sendDatagramTo(buffer, addr);
+        } catch (Exception e) {
+            System.out.println("Impossible to send the message to "+addr.getAddress()+" on the port "+addr.getPort());
+            e.printStackTrace();
+        }
     }
 
     /**
-     * converts bytes into a String
-     * @param buffer the message to convert
-     * @return String the converted message
+     * sends a datagram
+     * @param buffer the datagram to send (max length = the size of the datagrams)
+     * @param addr the address and the port of the recipient
      */
-    public String byteToString (byte[] buffer) {
-        return new String(buffer, 0, buffer.length);
+    private void sendDatagramTo (ByteBuffer buffer, InetSocketAddress addr) throws Exception {
+        if (multiplexer!=null)
+            multiplexer.send(addr, buffer);
+        else {
+            while (channel.send(buffer, addr)==0)
+                Thread.yield();
+        }
     }
 
     /**
-     * converts an int into bytes
-     * @param message the message to convert
-     * @return byte [] the converted message
+     * sends a datagram to the group being published to : to the multicast group, or to each member if multicast isn't available
+     * @param buffer the datagram to send (max length = the size of the datagrams)
      */
-    public byte[] intToByte (int message) {
-        byte[] buffer = new byte[Integer.BYTES];
-        ByteBuffer byteBuffer = ByteBuffer.wrap(buffer);
-        byteBuffer.putInt(message);
-        return buffer;
+    private void publishDatagram (ByteBuffer buffer) {
+        int start=buffer.position();
+        if (!publishing.unicast) {
+            try {
+                sendDatagramTo(buffer, publishing.multicast);
+                return;
+            } catch (Exception e) { // the datagram and the next ones are sent to each member
+                System.out.println("Impossible to send the message to the multicast group "+publishing.multicast.getAddress()+", it is sent to each member");
+                publishing.unicast=true;
+            }
+        }
+        for (InetSocketAddress member : publishing.members) {
+            buffer.position(start);
+            try {
+                sendDatagramTo(buffer, member);
+            } catch (Exception e) {
+                System.out.println("Impossible to send the message to "+member.getAddress()+" on the port "+member.getPort());
+                e.printStackTrace();
+            }
+        }
     }
 
     /**
-     * converts bytes into an int
-     * @param buffer the message to convert
-     * @return int the converted message
+     * sends the message written in messageBuffer in reliable mode and waits until all its fragments are acknowledged
      */
-    public int byteToInt (byte[] buffer) {
-        if (buffer.length!=Integer.BYTES) {
-            System.out.println("Impossible to convert the message to int");
-            return 0;
+    private void sendReliable () {
+        int length=messageBuffer.remaining();
+        int fragmentSize=sendBuffer.capacity()-RELIABLE_HEADER;
+        int count=Math.max(1,(length+fragmentSize-1)/fragmentSize);
+        messageId++;
+        if (acked==null || acked.length<count) {
+            acked=new boolean [count];
+            sentAt=new long [count];
+            retransmitted=new boolean [count];
+            inFlight=new boolean [count];
+            lost=new boolean [count];
         }
-        return ByteBuffer.wrap(buffer).getInt();
+        Arrays.fill(acked, 0, count, false);
+        Arrays.fill(sentAt, 0, count, 0);
+        Arrays.fill(retransmitted, 0, count, false);
+        Arrays.fill(inFlight, 0, count, false);
+        Arrays.fill(lost, 0, count, false);
+        nbAcked=0;
+        nbInFlight=0;
+        nextToSend=0;
+        firstLost=0;
+        sendingCount=count;
+        int retries=0;
+        long lastProgress=System.nanoTime();
+        while (nbAcked<count) {
+            sendWindow();
+            long now=System.nanoTime();
+            if (lastProgress+rto<=now) { // nothing acknowledged during rto : all the fragments on the way are lost
+                retries++;
+                if (MAX_RETRIES<retries) {
+                    System.out.println("Impossible to send the message because "+(count-nbAcked)+" parts are not acknowledged by "+recipient.getAddress()+" on the port "+recipient.getPort());
+                    break;
+                }
+                for (int seq=0;seq<nextToSend;seq++)
+                    if (inFlight[seq])
+                        markLost(seq);
+                slowStartThreshold=Math.max(2,congestionWindow/2);
+                congestionWindow=1;
+                rto=Math.min(2*rto,MAX_RTO);
+                lastProgress=now;
+                continue;
+            }
+            int before=nbAcked;
+            if (dispatching) { // the acknowledgements are handled by the receiver thread
+                try {
+                    acknowledged.awaitNanos(lastProgress+rto-now);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+            else {
+                ByteBuffer datagram=receiveMessage((int)Math.max(1,(lastProgress+rto-now)/1_000_000L));
+                if (datagram!=null && !receiveFrame(datagram)) { // not sent in reliable mode, kept for later
+                    byte[] message=toBytes(datagram);
+                    ready.add(new DatagramPacket(message, message.length, fromAddress, fromPort));
+                }
+            }
+            if (before<nbAcked) { // the recipient is receiving again : no more backoff
+                retries=0;
+                lastProgress=System.nanoTime();
+                if (0<=srtt)
+                    rto=Math.min(Math.max(MIN_RTO,srtt+4*rttvar),MAX_RTO);
+            }
+        }
+        sendingCount=0;
     }
 
     /**
-     * converts a boolean into bytes
-     * @param message the message to convert
-     * @return byte [] the converted message
+     * sends the fragments lost, then the fragments never sent, while the window allows it
      */
-    public byte[] booleanToByte (boolean message) {
-        byte[] buffer = new byte[1];
-        buffer[0]=(byte)(message ? 1 : 0);
-        return buffer;
+    private void sendWindow () {
+        int window=Math.max(1,Math.min((int)congestionWindow,peerWindow));
+        while (nbInFlight<window) {
+            while (firstLost<nextToSend && !lost[firstLost])
+                firstLost++;
+            int seq;
+            if (firstLost<nextToSend)
+                seq=firstLost;
+            else if (nextToSend<sendingCount)
+                seq=nextToSend++;
+            else
+                return;
+            // the recipient acknowledges immediately when the window is full or at the end of the message
+            sendReliableFragment(seq, nbInFlight+1==window || seq==sendingCount-1);
+        }
     }
 
     /**
-     * converts bytes into a boolean
-     * @param buffer the message to convert
-     * @return boolean the converted message
+     * sends a fragment of the message written in messageBuffer
+     * @param seq the number of the fragment
+     * @param ackNow true if the recipient must acknowledge it immediately
      */
-    public boolean byteToBoolean (byte[] buffer) {
-        if (buffer.length!=1) {
-            System.out.println("Impossible to convert the message to boolean");
-            return false;
+    private void sendReliableFragment (int seq, boolean ackNow) {
+        int length=messageBuffer.limit();
+        int fragmentSize=sendBuffer.capacity()-RELIABLE_HEADER;
+        int offset=seq*fragmentSize;
+        sendBuffer.clear();
+        sendBuffer.put(ackNow ? RELIABLE_DATA_ACK : RELIABLE_DATA);
+        sendBuffer.putInt(messageId);
+        sendBuffer.putInt(seq);
+        sendBuffer.putInt(length);
+        sendBuffer.putShort((short)fragmentSize);
+        sendBuffer.put(messageBuffer.array(), messageBuffer.arrayOffset()+offset, Math.min(fragmentSize,length-offset));
+        if (sentAt[seq]!=0)
+            retransmitted[seq]=true;
+        if (lost[seq])
+            lost[seq]=false;
+        if (!inFlight[seq]) {
+            inFlight[seq]=true;
+            nbInFlight++;
         }
-        return buffer[0]!=0;
+        sendBuffer.flip(); // sent at once even with the batching, its acknowledgement is waited for
+        sendDatagram(sendBuffer, recipient);
+        sentAt[seq]=System.nanoTime();
     }
 
     /**
-     * converts a double into bytes
-     * @param message the message to convert
-     * @return byte [] the converted message
+     * marks a fragment on the way as lost, it will be sent again
+     * @param seq the number of the fragment
      */
-    public byte[] doubleToByte (double message) {
-        byte[] buffer = new byte[Double.BYTES];
-        ByteBuffer byteBuffer = ByteBuffer.wrap(buffer);
-        byteBuffer.putDouble(message);
-        return buffer;
+    private void markLost (int seq) {
+        if (inFlight[seq]) {
+            inFlight[seq]=false;
+            nbInFlight--;
+        }
+        if (!acked[seq] && !lost[seq]) {
+            lost[seq]=true;
+            if (seq<firstLost)
+                firstLost=seq;
+        }
     }
 
     /**
-     * converts bytes into a double
-     * @param buffer the message to convert
-     * @return double the converted message
+     * returns the number of fragments which can be received without overflowing the receive buffer of the socket
+     * @return int the number of fragments which can be received
      */
-    public double byteToDouble (byte[] buffer) {
-        if (buffer.length!=Double.BYTES) {
-            System.out.println("Impossible to convert the message to double");
-            return 0;
-        }
-        return ByteBuffer.wrap(buffer).getDouble();
+    private int getReceiveWindow () {
+        return Math.max(1,receiveBufferSize/(2*sendBuffer.capacity())); // the system counts about twice the size of a datagram
     }
 
     /**
-     * converts ints into bytes
-     * @param message the message to convert
-     * @return byte [] the converted message
+     * handles a datagram sent in reliable mode
+     * @param datagram the datagram received
+     * @return boolean true if the datagram has been sent in reliable mode, false otherwise
      */
-    public byte[] intArrayToByte (int [] message) {
-        byte[] buffer = new byte[Integer.BYTES*message.length];
-        ByteBuffer byteBuffer = ByteBuffer.wrap(buffer);
-        for (int i=0;i<message.length;i++)
-            byteBuffer.putInt(message[i]);
-        return buffer;
+    private boolean receiveFrame (ByteBuffer datagram) {
+        byte kind=datagram.get(datagram.position());
+        if (kind==RELIABLE_DATA || kind==RELIABLE_DATA_ACK)
+            receiveFragment(datagram);
+        else if (kind==RELIABLE_ACK)
+            receiveAck(datagram);
+        else if (kind==RELIABLE_NACK)
+            receiveNack(datagram);
+        else
+            return false;
+        releaseBuffer(datagram);
+        return true;
     }
 
     /**
-     * converts bytes into ints
-     * @param buffer the message to convert
-     * @return int [] the converted message
+     * copies a fragment in the message it belongs to and acknowledges it
+     * @param datagram the fragment received
      */
-    public int [] byteToIntArray (byte[] buffer) {
-        if (buffer.length%Integer.BYTES!=0) {
-            System.out.println("Impossible to convert the message to int []");
-            return null;
+    private void receiveFragment (ByteBuffer datagram) {
+        boolean ackNow=(datagram.get()==RELIABLE_DATA_ACK);
+        int id=datagram.getInt();
+        int seq=datagram.getInt();
+        int length=datagram.getInt();
+        int fragmentSize=datagram.getShort()&0xFFFF;
+        if (length<0 || fragmentSize==0)
+            return;
+        reassembly.evict();
+        PartialMessage partial=reassembly.get(fromAddress, fromPort, id);
+        if (partial==null)
+            partial=reassembly.create(fromAddress, fromPort, id, length, fragmentSize);
+        else if (partial.isComplete()) { // the acknowledgement has been lost
+            sendAck(partial.sender, id, partial.count);
+            return;
         }
-        int [] res=new int [buffer.length/Integer.BYTES];
-        ByteBuffer byteBuffer = ByteBuffer.wrap(buffer, 0, buffer.length);
-        for (int i=0;i<res.length;i++)
-            res[i] = byteBuffer.getInt();
-        return res;
+        InetSocketAddress sender=partial.sender;
+        int highest=partial.highest;
+        if (!partial.add(seq, seq*fragmentSize, datagram))
+            sendAck(sender, partial);
+        else if (partial.isComplete()) {
+            ready.add(new DatagramPacket(partial.data, partial.data.length, fromAddress, fromPort));
+            sendAck(sender, partial);
+            reassembly.complete(partial);
+        }
+        else if (highest+1<seq || seq==partial.count-1)
+            sendNack(sender, partial, seq);
+        else if (ackNow || ACK_EVERY<=partial.sinceAck)
+            sendAck(sender, partial);
     }
 
     /**
-     * converts booleans into bytes
-     * @param message the message to convert
-     * @return byte [] the converted message
+     * sends an acknowledgement of the fragments received
+     * @param addr the address and the port of the sender
+     * @param partial the message being received
      */
-    public byte[] booleanArrayToByte (boolean [] message) {
-        byte[] res = new byte [1+(message.length+7)/8];
-        res[0]=(byte)(1+(message.length-1)%8); // number of booleans in the last byte
-        for (int i = 0; i < message.length; i++)
-            if (message[i])
-                res[1+i/8] |= (1 << (i % 8));
-        return res;
+    private void sendAck (InetSocketAddress addr, PartialMessage partial) {
+        partial.sinceAck=0;
+        controlBuffer.clear();
+        controlBuffer.put(RELIABLE_ACK);
+        controlBuffer.putInt(partial.id);
+        controlBuffer.putInt(partial.next);
+        controlBuffer.putInt(getReceiveWindow());
+        partial.putSelectiveAck(controlBuffer, SELECTIVE_ACK_BYTES);
+        controlBuffer.flip();
+        sendDatagram(controlBuffer, addr);
     }
 
     /**
-     * converts bytes into booleans
-     * @param buffer the message to convert
-     * @return boolean [] the converted message
+     * sends an acknowledgement of all the fragments of a message
+     * @param addr the address and the port of the sender
+     * @param id the identifier of the message
+     * @param count the number of fragments of the message
      */
-    public boolean [] byteToBooleanArray (byte[] buffer) {
-        if (buffer.length<=1) {
-            System.out.println("Impossible to convert the message to boolean []");
-            return null;
-        }
-        int lengthLast = buffer[0]; // number of booleans in the last byte
-        if (lengthLast<1 || 8<lengthLast) {
-            System.out.println("Impossible to convert the message to boolean []");
-            return null;
-        }
-        boolean [] res=new boolean [8*(buffer.length-2)+lengthLast];
-        for (int i=0;i<res.length;i++)
-            res[i]=( (buffer[1+i/8] & (1 << (i%8)))!=0 );
-        return res;
+    private void sendAck (InetSocketAddress addr, int id, int count) {
+        controlBuffer.clear();
+        controlBuffer.put(RELIABLE_ACK);
+        controlBuffer.putInt(id);
+        controlBuffer.putInt(count);
+        controlBuffer.putInt(getReceiveWindow());
+        controlBuffer.putShort((short)0);
+        controlBuffer.flip();
+        sendDatagram(controlBuffer, addr);
     }
 
     /**
-     * converts doubles into bytes
-     * @param message the message to convert
-     * @return byte [] the converted message
+     * sends the list of the fragments missing before a fragment received
+     * @param addr the address and the port of the sender
+     * @param partial the message being received
+     * @param seq the fragment received
      */
-    public byte[] doubleArrayToByte (double [] message) {
-        byte[] buffer = new byte[Double.BYTES*message.length];
-        ByteBuffer byteBuffer = ByteBuffer.wrap(buffer);
-        for (int i=0;i<message.length;i++)
-            byteBuffer.putDouble(message[i]);
-        return buffer;
+    private void sendNack (InetSocketAddress addr, PartialMessage partial, int seq) {
+        partial.sinceAck=0;
+        controlBuffer.clear();
+        controlBuffer.put(RELIABLE_NACK);
+        controlBuffer.putInt(partial.id);
+        controlBuffer.putInt(partial.next);
+        controlBuffer.putInt(getReceiveWindow());
+        partial.putSelectiveAck(controlBuffer, SELECTIVE_ACK_BYTES);
+        int position=controlBuffer.position();
+        controlBuffer.putShort((short)0);
+        int nbMissing=0;
+        for (int i=partial.next;i<seq && nbMissing<(controlBuffer.capacity()-position-2)/Integer.BYTES;i++) {
+            if (!partial.received[i]) {
+                controlBuffer.putInt(i);
+                nbMissing++;
+            }
+        }
+        controlBuffer.putShort(position, (short)nbMissing);
+        controlBuffer.flip();
+        sendDatagram(controlBuffer, addr);
     }
 
     /**
-     * converts bytes into doubles
-     * @param buffer the message to convert
-     * @return double [] the converted message
+     * marks the fragments acknowledged by the recipient of the message being sent
+     * @param datagram the acknowledgement received
      */
-    public double [] byteToDoubleArray (byte[] buffer) {
-        if (buffer.length%Double.BYTES!=0) {
-            System.out.println("Impossible to convert the message to double []");
-            return null;
+    private void receiveAck (ByteBuffer datagram) {
+        datagram.get();
+        int id=datagram.getInt();
+        if (sendingCount==0 || id!=messageId || fromPort!=recipient.getPort() || !fromAddress.equals(recipient.getAddress()))
+            return;
+        int next=Math.min(datagram.getInt(),sendingCount);
+        peerWindow=Math.max(1,datagram.getInt());
+        int nbBytes=datagram.getShort();
+        long sample=-1;
+        for (int seq=0;seq<next;seq++)
+            sample=Math.max(sample,acknowledge(seq));
+        for (int i=0;i<nbBytes;i++) {
+            byte bits=datagram.get();
+            for (int j=0;j<8;j++) {
+                int seq=next+1+8*i+j;
+                if ((bits & (1 << j))!=0 && seq<sendingCount)
+                    sample=Math.max(sample,acknowledge(seq));
+            }
         }
-        double [] res=new double [buffer.length/Double.BYTES];
-        ByteBuffer byteBuffer = ByteBuffer.wrap(buffer, 0, buffer.length);
-        for (int i=0;i<res.length;i++)
-            res[i] = byteBuffer.getDouble();
-        return res;
+        if (0<=sample)
+            updateRtt(System.nanoTime()-sample);
     }
 
     /**
-     * converts the number into an object type
-     * @param type the number to convert
-     * @return String the corresponding type
+     * sends again the fragments missing for the recipient of the message being sent
+     * @param datagram the list of the fragments missing
      */
-    private String getType (int type) {
-        switch (type) {
-            case 80:return "byte []";
-            case 81:return "String";
-            case 82:return "int";
-            case 83:return "boolean";
-            case 84:return "double";
-            case 85:return "int []";
-            case 86:return "boolean []";
-            case 87:return "double []";
-            default: return "unknown";
+    private void receiveNack (ByteBuffer datagram) {
+        int id=datagram.getInt(datagram.position()+1);
+        if (sendingCount==0 || id!=messageId || fromPort!=recipient.getPort() || !fromAddress.equals(recipient.getAddress()))
+            return;
+        receiveAck(datagram);
+        int nbMissing=datagram.getShort();
+        long now=System.nanoTime();
+        boolean missing=false;
+        for (int i=0;i<nbMissing;i++) {
+            int seq=datagram.getInt();
+            if (0<=seq && seq<nextToSend && !acked[seq] && inFlight[seq] && (srtt<0 || srtt<=now-sentAt[seq])) {
+                markLost(seq);
+                missing=true;
+            }
+        }
+        if (missing && (srtt<0 || srtt<=now-lastDecrease)) { // at most one decrease per round trip
+            slowStartThreshold=Math.max(2,congestionWindow/2);
+            congestionWindow=slowStartThreshold;
+            lastDecrease=now;
         }
-    } 
+    }
 
     /**
-     * sends all bytes
-     * @param addr recipient's address
-     * @param port the recipient's port
-     * @param byte bytes to send
+     * marks a fragment of the message being sent as acknowledged
+     * @param seq the number of the fragment
+     * @return long the time (ns) the fragment has been sent if it can measure the round trip time, -1 otherwise
      */
-    private void sendMessages (InetAddress addr, int port, byte[] buffer) {
-        int length=0;
-        int space=Math.min(buffer.length,1020);
-        byte[] buffer2=new byte [4+space];
-        ByteBuffer byteBuffer = ByteBuffer.wrap(buffer2);
-        byteBuffer.putInt(buffer.length);
-        System.arraycopy(buffer, 0, buffer2, 4, space);
-        sendMessage(addr,port,buffer2);
-        length+=space;
-        space=Math.min(buffer.length-length,1024);
+    private long acknowledge (int seq) {
+        if (acked[seq])
+            return -1;
+        acked[seq]=true;
+        nbAcked++;
+        if (inFlight[seq]) {
+            inFlight[seq]=false;
+            nbInFlight--;
+        }
+        lost[seq]=false;
+        if (congestionWindow<slowStartThreshold)
+            congestionWindow++;
+        else
+            congestionWindow+=1/congestionWindow;
+        return retransmitted[seq] ? -1 : sentAt[seq];
+    }
 
-        while (0<space) {
-            buffer2=new byte[space];
-            System.arraycopy(buffer, length, buffer2, 0, space);
-            sendMessage(addr,port,buffer2);
-            length+=space;
-            space=Math.min(buffer.length-length,1024);
+    /**
+     * updates the time before sending again a fragment with a new measure of the round trip time
+     * @param sample the round trip time measured (ns)
+     */
+    private void updateRtt (long sample) {
+        if (srtt<0) {
+            srtt=sample;
+            rttvar=sample/2;
         }
+        else {
+            rttvar=(3*rttvar+Math.abs(srtt-sample))/4;
+            srtt=(7*srtt+sample)/8;
+        }
+        rto=Math.min(Math.max(MIN_RTO,srtt+4*rttvar),MAX_RTO);
     }
 
     /**
-     * sends bytes (max length = 1024 bytes)
-     * @param addr recipient's address
-     * @param port the recipient's port
-     * @param byte bytes to send (max length = 1024 bytes)
+     * waits for a message sent in reliable mode or for a datagram which hasn't been sent in reliable mode
+     * @param ms maximum waiting time
+     * @return ByteBuffer the message received (length and type followed by the message)
      */
-    private void sendMessage (InetAddress addr, int port, byte[] message) {
-        try {
-            if (message.length>1024) {
-                System.out.println("Warning : Only 1024 bytes sent out of "+message.length);
-                message=Arrays.copyOfRange(message, 0, 1024);
+    private ByteBuffer receiveReliable (int ms) {
+        long end=System.currentTimeMillis()+ms;
+        while (ready.isEmpty()) {
+            int wait=0;
+            if (0<ms) {
+                wait=(int)(end-System.currentTimeMillis());
+                if (wait<=0)
+                    return null;
             }
-            DatagramPacket packet = new DatagramPacket(message, message.length, addr, port);
-            socket.send(packet);
-        } catch (Exception e) {
-            System.out.println("Impossible to send the message to "+addr+" on the port "+port);
-            e.printStackTrace();
+            ByteBuffer datagram=receiveMessage(wait);
+            if (datagram!=null && !receiveFrame(datagram))
+                return datagram;
         }
+        DatagramPacket packet=ready.poll();
+        lastAddress=packet.getAddress();
+        lastPort=packet.getPort();
+        return ByteBuffer.wrap(packet.getData(), 0, packet.getLength()).asReadOnlyBuffer();
     }
 
     /**
      * waits for all bytes to be received
      * @param ms maximum waiting time
-     * @return byte [] the message received
+     * @return ByteBuffer a read-only view of the message received, positioned on its type
      */
-    private byte[] receiveMessages (int ms) {
-        byte[] res = null;
+    private ByteBuffer receiveMessages (int ms) {
+        ByteBuffer res=unpacked.poll();
+        if (res!=null)
+            return decode(res);
         if (0<=ms) {
-            byte[] buffer=receiveMessage(ms);
+            ByteBuffer buffer;
+            if (dispatching || !received.isEmpty()) // the messages received before the receiver thread has stopped are read first
+                buffer=pollReceived(ms);
+            else
+                buffer=(reliable ? receiveReliable(ms) : receiveMessage(ms));
             if (buffer==null)
                 return null;
-            if (buffer.length<5) {
+            if (buffer.remaining()<5) {
                 System.out.println("Impossible to receive message because it is to short");
+                releaseBuffer(buffer);
                 return null;
             }
-            InetAddress addr=receivedPacket.getAddress();
-            int port=receivedPacket.getPort();
-            int length=ByteBuffer.wrap(buffer).getInt();
-            res=new byte [length];
-            System.arraycopy(buffer, 4, res, 0, buffer.length-4);
-            int extracted=buffer.length-4;
+            int length=buffer.getInt();
+            if (length==buffer.remaining()) // the message is in only one datagram
+                return decode(unpack(buffer));
+            InetAddress addr=getLastAddress();
+            int port=getLastPort();
+            byte[] message=new byte [length];
+            int extracted=Math.min(buffer.remaining(),length);
+            buffer.get(message, 0, extracted);
+            releaseBuffer(buffer);
             while (extracted<length) {
-                buffer=receiveMessageFrom(addr,port,10);
-                if (buffer==null) {
+                ByteBuffer part=receiveMessageFrom(addr,port,10);
+                if (part==null) {
                     System.out.println("Impossible to receive message because a part is missing");
                     return null;
                 }
-                System.arraycopy(buffer, 0, res, extracted, buffer.length);
-                extracted+=buffer.length;
+                int size=Math.min(part.remaining(),length-extracted);
+                part.get(message, extracted, size); // copied once, from the buffer of the pool to the message
+                releaseBuffer(part);
+                extracted+=size;
             }
+            res=decode(unpack(ByteBuffer.wrap(message).asReadOnlyBuffer()));
         }
         else
             System.out.println("Impossible to receive message because ms isn't positive");
@@ -1081,43 +4574,58 @@ public class ClientServer {
     }
 
     /**
-     * waits for bytes to be received (max length = 1024 bytes)
+     * separates the small messages received together, the next ones are kept to be read later
+     * @param message the message received, positioned on its type
+     * @return ByteBuffer the message, or the first small message if it contains several ones
+     */
+    private ByteBuffer unpack (ByteBuffer message) {
+        if (message.get(message.position())!=COALESCED)
+            return message;
+        byte[] data=toBytes(message);
+        ByteBuffer reader=ByteBuffer.wrap(data);
+        reader.position(1);
+        while (Integer.BYTES<reader.remaining()) {
+            int length=reader.getInt();
+            if (length<=0 || reader.remaining()<length)
+                break;
+            unpacked.add(ByteBuffer.wrap(data, reader.position(), length).slice().asReadOnlyBuffer());
+            reader.position(reader.position()+length);
+        }
+        return unpacked.poll();
+    }
+
+    /**
+     * waits for bytes to be received (max length = the size of the datagrams)
      * @param ms maximum waiting time
-     * @return byte [] the message received (max length = 1024 bytes)
+     * @return ByteBuffer a read-only view of the message received (max length = the size of the datagrams)
      */
-    private byte [] receiveMessage (int ms) {
-        byte[] res = null;
+    private ByteBuffer receiveMessage (int ms) {
+        ByteBuffer res = null;
         if (0<=ms) {
-            if (0<messages.size()) {
-                receivedPacket=messages.get(0);
-                messages.remove(0);
-                res=Arrays.copyOfRange(receivedPacket.getData(), 0, receivedPacket.getLength());
-            }
-            else {
-                try {
-                    socket.setSoTimeout(ms);
-                    try {
-                        byte[] buffer = new byte[1024];
-                        receivedPacket = new DatagramPacket(buffer, buffer.length);
-                        socket.receive(receivedPacket);
-                        res=Arrays.copyOfRange(receivedPacket.getData(), 0, receivedPacket.getLength());
-                        if (res.length<=5) {
-                            System.out.println("Impossible to receive message because it is to short");
-                            return null;
-                        }
-                        if (connected && receivedPacket.getAddress().equals(addrCom) && receivedPacket.getPort()==portCom) {
-                            if (isDeconnectionMessage(new String(Arrays.copyOfRange(res, 5, receivedPacket.getLength()), 0, res.length-5)))
-                                connected=false;
-                        }
-                    } catch (SocketTimeoutException e) {
-                        socket.setSoTimeout(0);
-                    }finally {
-                        socket.setSoTimeout(0);
+            try {
+                byte op;
+                do {
+                    if (inbox!=null)
+                        res=receiveFromInbox(ms);
+                    else {
+                        res=pollUnread();
+                        if (res==null)
+                            res=receiveDatagram(ms);
                     }
-                } catch (Exception e) {
-                    System.out.println("Impossible to receive a message");
-                    e.printStackTrace();
+                    if (res==null)
+                        return null;
+                    op=receiveControl(res);
+                    if (op==CONTROL_DISCONNECT) // the methods waiting for a message return
+                        return null;
+                }while(op!=0);
+                if (res.remaining()<5) {
+                    System.out.println("Impossible to receive message because it is to short");
+                    releaseBuffer(res);
+                    return null;
                 }
+            } catch (Exception e) {
+                System.out.println("Impossible to receive a message");
+                e.printStackTrace();
             }
         }
         else
@@ -1126,55 +4634,37 @@ public class ClientServer {
     }
 
     /**
-     * waits for the reception of bytes sent by a precise person (max length = 1024 bytes)
+     * waits for the reception of bytes sent by a precise person (max length = the size of the datagrams)
      * @param addr the address of the sender
      * @param addr the port of the sender
      * @param ms maximum waiting time
-     * @return byte [] the message received (max length = 1024 bytes)
+     * @return ByteBuffer a read-only view of the bytes received, to release after use
      */
-    private byte [] receiveMessageFrom (InetAddress addr, int port, int ms) {
-        byte[] res = null;
+    private ByteBuffer receiveMessageFrom (InetAddress addr, int port, int ms) {
+        ByteBuffer res = null;
         if (0<=ms) {
-            DatagramPacket oldPacket=null;
-            int i=0;
-            boolean found=false;
-            while(i<messages.size() && !false) {
-                oldPacket=messages.get(i);
-                found=(oldPacket.getAddress().equals(addr) && oldPacket.getPort()==port);
-                i++;
-            }
-            if (found) {
-                receivedPacket=oldPacket;
-                messages.remove(oldPacket);
-                res=Arrays.copyOfRange(receivedPacket.getData(), 0, receivedPacket.getLength());
+            ConcurrentLinkedQueue <DatagramPacket> unread=messages.get(new InetSocketAddress(addr, port));
+            DatagramPacket oldPacket=(unread==null ? null : unread.poll());
+            if (oldPacket!=null) {
+                setSender(oldPacket.getAddress(), oldPacket.getPort());
+                res=ByteBuffer.wrap(oldPacket.getData(), 0, oldPacket.getLength());
             }
+            else if (inbox!=null) // a session only receives the messages of its client
+                res=receiveFromInbox(ms);
             else {
                 try {
-                    socket.setSoTimeout(ms);
-                    try {
-                        DatagramPacket newPacket=null;
-                        do {
-                            byte[] buffer = new byte[1024];
-                            newPacket = new DatagramPacket(buffer, buffer.length);
-                            socket.receive(newPacket);
-                            if (!newPacket.getAddress().equals(addr) || newPacket.getPort()!=port)
-                                messages.add(newPacket);
-                        }while(!newPacket.getAddress().equals(addr) || newPacket.getPort()!=port);
-                        receivedPacket=newPacket;
-                        res=Arrays.copyOfRange(receivedPacket.getData(), 0, receivedPacket.getLength());
-                        if (res.length<=5) {
-                            System.out.println("Impossible to receive message because it is to short");
+                    long end=System.currentTimeMillis()+ms;
+                    do {
+                        int wait=(int)(end-System.currentTimeMillis());
+                        res=(0<wait ? receiveDatagram(wait) : null);
+                        if (res==null)
                             return null;
+                        if (!fromAddress.equals(addr) || fromPort!=port) { // kept for later
+                            byte[] other=toBytes(res);
+                            addUnread(new DatagramPacket(other, other.length, fromAddress, fromPort));
+                            res=null;
                         }
-                        if (connected && receivedPacket.getAddress().equals(addrCom) && receivedPacket.getPort()==portCom) {
-                            if (isDeconnectionMessage(new String(Arrays.copyOfRange(res, 5, receivedPacket.getLength()), 0, res.length-5)))
-                                connected=false;
-                        }
-                    } catch (SocketTimeoutException e) {
-                        socket.setSoTimeout(0);
-                    }finally {
-                        socket.setSoTimeout(0);
-                    }
+                    }while(res==null);
                 } catch (Exception e) {
                     System.out.println("Impossible to receive a message");
                     e.printStackTrace();
@@ -1186,12 +4676,355 @@ public class ClientServer {
         return res;
     }
 
+    /**
+     * keeps a message received to read it later
+     * @param packet the message received
+     */
+    private void addUnread (DatagramPacket packet) {
+        InetSocketAddress sender=new InetSocketAddress(packet.getAddress(), packet.getPort());
+        ConcurrentLinkedQueue <DatagramPacket> unread=messages.get(sender);
+        if (unread==null)
+            unread=messages.computeIfAbsent(sender, key -> new ConcurrentLinkedQueue <DatagramPacket> ());
+        unread.add(packet);
+        messagesOrder.add(sender);
+    }
+
+    /**
+     * takes the oldest unread message
+     * @return ByteBuffer a read-only view of the message, null if there is no unread message
+     */
+    private ByteBuffer pollUnread () {
+        InetSocketAddress sender;
+        while ((sender=messagesOrder.poll())!=null) {
+            DatagramPacket packet=messages.get(sender).poll();
+            if (packet!=null) { // else already read by receiveMessageFrom
+                setSender(packet.getAddress(), packet.getPort());
+                return ByteBuffer.wrap(packet.getData(), 0, packet.getLength()).slice().asReadOnlyBuffer();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * waits for a datagram on the channel and writes it in a buffer of the pool
+     * @param ms maximum waiting time (0 to wait indefinitely)
+     * @return ByteBuffer a read-only view of the datagram, null if nothing has been received
+     */
+    private ByteBuffer receiveDatagram (int ms) throws Exception {
+        long end=System.currentTimeMillis()+ms;
+        ByteBuffer res;
+        while ((res=receiveDatagramNow())==null) {
+            long wait=0;
+            if (0<ms) {
+                wait=end-System.currentTimeMillis();
+                if (wait<=0)
+                    return null;
+            }
+            selector.select(wait);
+            selector.selectedKeys().clear();
+        }
+        return res;
+    }
+
+    /**
+     * takes a datagram waiting on the channel and writes it in a buffer of the pool
+     * @return ByteBuffer a read-only view of the datagram, null if no datagram is waiting
+     */
+    private ByteBuffer receiveDatagramNow () throws Exception {
+        int index=pool.acquire();
+        ByteBuffer buffer=(index<0 ? ByteBuffer.allocate(pool.getBufferSize()) : pool.buffer(index));
+        InetSocketAddress sender=(InetSocketAddress)channel.receive(buffer);
+        if (sender==null) {
+            if (0<=index)
+                releaseBuffer(buffer);
+            return null;
+        }
+        setSender(sender.getAddress(), sender.getPort());
+        lastReceived=System.nanoTime();
+        if (index<0) {
+            buffer.flip();
+            return buffer.asReadOnlyBuffer();
+        }
+        return pool.view(index);
+    }
+
+    /**
+     * remembers the sender of the datagram being handled
+     * @param addr the address of the sender
+     * @param port the port of the sender
+     */
+    private void setSender (InetAddress addr, int port) {
+        fromAddress=addr;
+        fromPort=port;
+        if (!dispatching) { // else the sender of a message is given when it is read
+            lastAddress=addr;
+            lastPort=port;
+        }
+    }
+
+    /**
+     * receives the datagrams continuously (receiver thread)
+     */
+    private void receiveLoop () {
+        while (receiver==Thread.currentThread() && channel.isOpen()) {
+            try {
+                ByteBuffer unread;
+                while ((unread=pollUnread())!=null) // kept while connecting or waiting for another sender
+                    dispatch(unread);
+                selector.select();
+                selector.selectedKeys().clear();
+                ByteBuffer datagram;
+                while ((datagram=receiveDatagramNow())!=null)
+                    dispatch(datagram);
+            } catch (Exception e) {
+                if (channel.isOpen()) {
+                    System.out.println("Impossible to receive a message");
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    /**
+     * handles a datagram as soon as it arrives (receiver thread or multiplexer)
+     * @param datagram the datagram received
+     */
+    private void dispatch (ByteBuffer datagram) {
+        InetSocketAddress sender=null;
+        PartialMessage partial=null;
+        if (!legacyMessages.isEmpty()) { // a message not sent in reliable mode is being received
+            sender=new InetSocketAddress(fromAddress, fromPort);
+            partial=legacyMessages.get(sender);
+            if (partial!=null && LEGACY_TIMEOUT<=(System.nanoTime()-partial.lastUpdate)/1_000_000L) {
+                System.out.println("Impossible to receive message because a part is missing");
+                legacyMessages.remove(sender);
+                partial=null;
+            }
+        }
+        if (partial==null) { // not the next part of a message : frame, control frame or first part of a message
+            if (datagram.remaining()<CONTROL_SIZE) {
+                releaseBuffer(datagram);
+                return;
+            }
+            byte kind=datagram.get(datagram.position());
+            if (kind==RELIABLE_ACK || kind==RELIABLE_NACK) {
+                sendLock.lock();
+                try {
+                    receiveFrame(datagram);
+                    acknowledged.signalAll();
+                } finally {
+                    sendLock.unlock();
+                }
+                return;
+            }
+            if (receiveFrame(datagram)) {
+                while (!ready.isEmpty())
+                    complete(ready.poll());
+                return;
+            }
+            byte op=receiveControl(datagram);
+            if (op==CONTROL_DISCONNECT)
+                disconnected(fromAddress, fromPort);
+            if (op!=0)
+                return;
+            if (datagram.remaining()<5) {
+                System.out.println("Impossible to receive message because it is to short");
+                releaseBuffer(datagram);
+                return;
+            }
+            int length=datagram.getInt();
+            if (length<0) {
+                releaseBuffer(datagram);
+                return;
+            }
+            partial=new PartialMessage(0, length, sendBuffer.capacity());
+            if (sender==null)
+                sender=new InetSocketAddress(fromAddress, fromPort);
+            legacyMessages.put(sender, partial);
+        }
+        partial.lastUpdate=System.nanoTime();
+        if (partial.append(datagram)) {
+            legacyMessages.remove(sender);
+            complete(new DatagramPacket(partial.data, partial.data.length, fromAddress, fromPort));
+        }
+        releaseBuffer(datagram);
+    }
+
+    /**
+     * gives a message received completely to the first asynchronous reception waiting, to the listener or to the queue read by the receiveX methods
+     * @param packet the message received (length and type followed by the message)
+     */
+    private void complete (DatagramPacket packet) {
+        if (4<packet.getLength() && packet.getData()[4]==COALESCED) { // small messages received together
+            ByteBuffer reader=ByteBuffer.wrap(packet.getData(), 5, packet.getLength()-5);
+            while (Integer.BYTES<reader.remaining()) {
+                int start=reader.position();
+                int length=reader.getInt();
+                if (length<=0 || reader.remaining()<length)
+                    break;
+                byte[] message=Arrays.copyOfRange(packet.getData(), start, start+4+length);
+                complete(new DatagramPacket(message, message.length, packet.getAddress(), packet.getPort()));
+                reader.position(reader.position()+length);
+            }
+            return;
+        }
+        if (4<packet.getLength() && (packet.getData()[4] & ENCODED)!=0) {
+            byte[] message=decode(packet.getData(), 4, packet.getLength()-4);
+            if (message==null)
+                return;
+            packet=new DatagramPacket(message, message.length, packet.getAddress(), packet.getPort());
+        }
+        if (4<packet.getLength() && (packet.getData()[4]==REQUEST || packet.getData()[4]==RESPONSE)) {
+            completeCall(packet);
+            return;
+        }
+        CompletableFuture <Object> future;
+        synchronized (waiting) {
+            future=waiting.poll();
+            if (future==null && listener==null) {
+                received.add(packet);
+                return;
+            }
+        }
+        Object message=decodeObject(ByteBuffer.wrap(packet.getData(), 4, packet.getLength()-4));
+        if (future!=null)
+            future.complete(message);
+        else
+            listener.onMessage(message, packet.getAddress(), packet.getPort());
+    }
+
+    /**
+     * waits for a message received by the receiver thread or the multiplexer
+     * @param ms maximum waiting time
+     * @return ByteBuffer the message received (length and type followed by the message)
+     */
+    private ByteBuffer pollReceived (int ms) {
+        try {
+            DatagramPacket packet;
+            if (ms==0)
+                packet=received.take();
+            else
+                packet=received.poll(ms, TimeUnit.MILLISECONDS);
+            if (packet==null)
+                return null;
+            lastAddress=packet.getAddress();
+            lastPort=packet.getPort();
+            if (packet.getLength()==0) // disconnection
+                return null;
+            return ByteBuffer.wrap(packet.getData(), 0, packet.getLength()).asReadOnlyBuffer();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+
+    /**
+     * returns the opcode of a control frame
+     * the frame is only recognized by its length and its first byte : a datagram following the first one of a message may look like a control frame, so it must be called only when no message is being received from the sender
+     * @param datagram the datagram received
+     * @return byte the opcode of the frame, 0 if the datagram isn't a control frame
+     */
+    static byte controlOpcode (ByteBuffer datagram) {
+        if (datagram.remaining()<CONTROL_SIZE)
+            return 0;
+        byte op=datagram.get(datagram.position());
+        if (op==CONTROL_PROBE && datagram.getInt(datagram.position()+1)==datagram.remaining())
+            return op;
+        if (datagram.remaining()!=CONTROL_SIZE || op<CONTROL_CONNECT || CONTROL_ACK<op) // a message starts with its length, which is positive
+            return 0;
+        return op;
+    }
+
+    /**
+     * handles a control frame received and releases it
+     * @param datagram the datagram received
+     * @return byte the opcode of the frame, 0 if the datagram isn't a control frame (it isn't released)
+     */
+    private byte receiveControl (ByteBuffer datagram) {
+        byte op=controlOpcode(datagram);
+        if (op==0)
+            return 0;
+        int argument=datagram.getInt(datagram.position()+1);
+        releaseBuffer(datagram);
+        if (op==CONTROL_DISCONNECT && connected && fromAddress.equals(addrCom) && fromPort==portCom)
+            connected=false;
+        else if (op==CONTROL_PING || op==CONTROL_PROBE)
+            sendControl(fromAddress,fromPort,CONTROL_ACK,argument);
+        else if (op==CONTROL_ACK && !sizeConfirmed && connected && fromAddress.equals(addrCom) && fromPort==portCom && argument<=MAX_DATAGRAM_SIZE) { // end of the connection
+            sizeConfirmed=true;
+            setSendSize(Math.max(MIN_DATAGRAM_SIZE,Math.min(argument,sendBuffer.capacity())));
+        }
+        return op;
+    }
+
+    /**
+     * waits for a message routed by the multiplexer (max length = the size of the datagrams)
+     * @param ms maximum waiting time
+     * @return ByteBuffer a read-only view of the message received
+     */
+    private ByteBuffer receiveFromInbox (int ms) {
+        ByteBuffer res = null;
+        try {
+            DatagramPacket packet;
+            if (ms==0)
+                packet=inbox.take();
+            else
+                packet=inbox.poll(ms, TimeUnit.MILLISECONDS);
+            if (packet!=null) {
+                setSender(packet.getAddress(), packet.getPort());
+                res=ByteBuffer.wrap(packet.getData(), 0, packet.getLength()).slice().asReadOnlyBuffer(); // the multiplexer already copied it
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return res;
+    }
+
+    /**
+     * follows the messages routed by the multiplexer to this session, called by its thread with each datagram before looking for a control frame
+     * @param datagram the datagram received
+     * @return boolean true if the datagram is the next part of a message not sent in reliable mode, it isn't a control frame even if it looks like one
+     */
+    boolean continuesMessage (byte[] datagram) {
+        long now=System.nanoTime();
+        if (0<routedRemaining && (now-routedAt)/1_000_000L<LEGACY_TIMEOUT) {
+            routedRemaining-=datagram.length;
+            routedAt=now;
+            return true;
+        }
+        routedRemaining=0; // a part is missing, the session drops the message
+        if (CONTROL_SIZE<=datagram.length && 0<=datagram[0]) { // first part of a message, starting with its length
+            routedRemaining=Integer.BYTES+ByteBuffer.wrap(datagram).getInt()-datagram.length;
+            routedAt=now;
+        }
+        return false;
+    }
+
+    /**
+     * gives a message received by the multiplexer to this session
+     * @param packet the message received
+     */
+    void deliver (DatagramPacket packet) {
+        synchronized (inbox) {
+            if (dispatching) {
+                setSender(packet.getAddress(), packet.getPort());
+                dispatch(ByteBuffer.wrap(packet.getData(), 0, packet.getLength()).slice().asReadOnlyBuffer());
+            }
+            else
+                inbox.add(packet);
+        }
+    }
+
     /**
      * class destructor
      */
     protected void finalize() {
-        if (socket!=null && !socket.isClosed())
-            socket.close();
+        try {
+            if (channel!=null && channel.isOpen())
+                channel.close();
+            if (selector!=null)
+                selector.close();
+        } catch (Exception e) {}
     }
 
 }
\ No newline at end of file
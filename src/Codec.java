@@ -0,0 +1,30 @@
+import java.nio.ByteBuffer;
+
+/**
+* interface to encode the payload of a message before sending it and decode it when it is received
+*/
+
+public interface Codec {
+
+    /**
+     * encodes bytes
+     * @param data the array containing the bytes to encode
+     * @param offset the position of the first byte to encode
+     * @param length the number of bytes to encode
+     * @return ByteBuffer the bytes encoded, null if they can't be encoded in less than length bytes
+     */
+    ByteBuffer encode (byte[] data, int offset, int length);
+
+    /**
+     * decodes bytes encoded by encode
+     * @param data the array containing the bytes to decode
+     * @param offset the position of the first byte to decode
+     * @param length the number of bytes to decode
+     * @param dst the array in which the bytes decoded are written
+     * @param dstOffset the position of the first byte decoded in dst
+     * @param dstLength the number of bytes decoded
+     * @return boolean true if the bytes have been decoded, false if they are corrupted
+     */
+    boolean decode (byte[] data, int offset, int length, byte[] dst, int dstOffset, int dstLength);
+
+}
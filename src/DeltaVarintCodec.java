@@ -0,0 +1,43 @@
+import java.nio.ByteBuffer;
+
+/**
+* codec for ints : each int is replaced by its difference with the previous one, written with a variable number of bytes
+* the differences are zigzag encoded so that the small negative ones are also short
+*/
+
+public class DeltaVarintCodec implements Codec {
+
+    public ByteBuffer encode (byte[] data, int offset, int length) {
+        if (length%Integer.BYTES!=0)
+            return null;
+        ByteBuffer ints=ByteBuffer.wrap(data, offset, length);
+        ByteBuffer res=ByteBuffer.allocate(length);
+        int previous=0;
+        while (ints.hasRemaining()) {
+            int value=ints.getInt();
+            int delta=value-previous;
+            if (!Varint.put(res, (delta << 1) ^ (delta >> 31)))
+                return null;
+            previous=value;
+        }
+        res.flip();
+        return res;
+    }
+
+    public boolean decode (byte[] data, int offset, int length, byte[] dst, int dstOffset, int dstLength) {
+        if (dstLength%Integer.BYTES!=0)
+            return false;
+        ByteBuffer buffer=ByteBuffer.wrap(data, offset, length);
+        ByteBuffer ints=ByteBuffer.wrap(dst, dstOffset, dstLength);
+        int previous=0;
+        while (ints.hasRemaining()) {
+            if (!buffer.hasRemaining())
+                return false;
+            int zigzag=Varint.get(buffer);
+            previous+=(zigzag >>> 1) ^ -(zigzag & 1);
+            ints.putInt(previous);
+        }
+        return true;
+    }
+
+}
@@ -0,0 +1,78 @@
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+* class to describe the recipients of the messages published : a multicast group, and the members to which the messages are sent one by one if multicast isn't available
+*/
+
+public class Group {
+
+    /**
+     * the address and the port of the multicast group, null to send the messages to each member
+     */
+    final InetSocketAddress multicast;
+
+    /**
+     * the members of the group, copied when a member is added or removed so the messages are published without locking
+     */
+    final CopyOnWriteArrayList <InetSocketAddress> members=new CopyOnWriteArrayList <InetSocketAddress> ();
+
+    /**
+     * true if sending to the multicast group has failed, the messages are then sent to each member
+     */
+    volatile boolean unicast;
+
+    /**
+     * class constructor of a group whose messages are sent to each member
+     */
+    public Group () {
+        multicast=null;
+        unicast=true;
+    }
+
+    /**
+     * class constructor of a multicast group, the recipients must join it with joinGroup
+     * @param addr the address of the multicast group
+     * @param port the port of the recipients
+     */
+    public Group (InetAddress addr, int port) {
+        multicast=new InetSocketAddress(addr, port);
+        unicast=!addr.isMulticastAddress();
+    }
+
+    /**
+     * adds a member, the messages are sent to it if multicast isn't available
+     * @param addr the address of the member
+     * @param port the port of the member
+     */
+    public void add (InetAddress addr, int port) {
+        members.addIfAbsent(new InetSocketAddress(addr, port));
+    }
+
+    /**
+     * removes a member
+     * @param addr the address of the member
+     * @param port the port of the member
+     */
+    public void remove (InetAddress addr, int port) {
+        members.remove(new InetSocketAddress(addr, port));
+    }
+
+    /**
+     * returns the number of members
+     * @return int the number of members
+     */
+    public int size () {
+        return members.size();
+    }
+
+    /**
+     * returns true if the messages are sent to the multicast group, false if they are sent to each member
+     * @return boolean true if the messages are sent to the multicast group
+     */
+    public boolean isMulticast () {
+        return !unicast;
+    }
+
+}
@@ -0,0 +1,104 @@
+import java.nio.ByteBuffer;
+
+/**
+* fast LZ77 compressor : the repeated sequences are replaced by their distance to the previous occurrence and their length
+* each sequence is the number of literals, the literals, the length of the match and its distance on 2 bytes, the last one has only literals
+*/
+
+public class LzCodec implements Codec {
+
+    /**
+     * minimum length of a match
+     */
+    private static final int MIN_MATCH=4;
+
+    /**
+     * number of bits of the hash of 4 bytes
+     */
+    private static final int HASH_BITS=14;
+
+    /**
+     * maximum distance of a match
+     */
+    private static final int MAX_DISTANCE=0xFFFF;
+
+    public ByteBuffer encode (byte[] data, int offset, int length) {
+        ByteBuffer res=ByteBuffer.allocate(length);
+        int[] table=new int [1 << HASH_BITS]; // last position+1 of each hash
+        int end=offset+length;
+        int anchor=offset;
+        int pos=offset;
+        while (pos+MIN_MATCH<=end) {
+            int sequence=readInt(data, pos);
+            int hash=(sequence*-1640531535) >>> (32-HASH_BITS);
+            int ref=table[hash]-1;
+            table[hash]=pos+1;
+            if (offset<=ref && pos-ref<=MAX_DISTANCE && readInt(data, ref)==sequence) {
+                int matchLength=MIN_MATCH;
+                while (pos+matchLength<end && data[ref+matchLength]==data[pos+matchLength])
+                    matchLength++;
+                if (!putLiterals(res, data, anchor, pos-anchor) || !Varint.put(res, matchLength) || res.remaining()<2)
+                    return null;
+                res.putShort((short)(pos-ref));
+                pos+=matchLength;
+                anchor=pos;
+            }
+            else
+                pos++;
+        }
+        if (!putLiterals(res, data, anchor, end-anchor))
+            return null;
+        res.flip();
+        return res;
+    }
+
+    public boolean decode (byte[] data, int offset, int length, byte[] dst, int dstOffset, int dstLength) {
+        ByteBuffer buffer=ByteBuffer.wrap(data, offset, length);
+        int out=dstOffset;
+        int end=dstOffset+dstLength;
+        while (out<end) {
+            int literals=Varint.get(buffer);
+            if (literals<0 || end-out<literals || buffer.remaining()<literals)
+                return false;
+            buffer.get(dst, out, literals);
+            out+=literals;
+            if (out==end)
+                break;
+            int matchLength=Varint.get(buffer);
+            if (matchLength<MIN_MATCH || end-out<matchLength || buffer.remaining()<2)
+                return false;
+            int distance=buffer.getShort() & 0xFFFF;
+            if (distance==0 || out-dstOffset<distance)
+                return false;
+            for (int i=0;i<matchLength;i++,out++) // the match may overlap the bytes being written
+                dst[out]=dst[out-distance];
+        }
+        return true;
+    }
+
+    /**
+     * writes the number of literals followed by the literals
+     * @param buffer the buffer in which the literals are written
+     * @param data the array containing the literals
+     * @param offset the position of the first literal
+     * @param length the number of literals
+     * @return boolean true if the literals have been written, false if there isn't enough space in the buffer
+     */
+    private static boolean putLiterals (ByteBuffer buffer, byte[] data, int offset, int length) {
+        if (!Varint.put(buffer, length) || buffer.remaining()<length)
+            return false;
+        buffer.put(data, offset, length);
+        return true;
+    }
+
+    /**
+     * reads 4 bytes
+     * @param data the array containing the bytes
+     * @param pos the position of the first byte
+     * @return int the 4 bytes
+     */
+    private static int readInt (byte[] data, int pos) {
+        return (data[pos] & 0xFF) | (data[pos+1] & 0xFF) << 8 | (data[pos+2] & 0xFF) << 16 | (data[pos+3] & 0xFF) << 24;
+    }
+
+}
@@ -0,0 +1,103 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+* class to receive a stream of bytes sent by a MessageOutputStream, its messages are read one by one and released once read
+*/
+
+class MessageInputStream extends InputStream {
+
+    /**
+     * the instance receiving the messages
+     */
+    private ClientServer client;
+
+    /**
+     * maximum waiting time for each message (0 to wait indefinitely)
+     */
+    private int ms;
+
+    /**
+     * the message being read, null if it is entirely read
+     */
+    private ByteBuffer chunk=null;
+
+    /**
+     * true if the end of the stream has been received
+     */
+    private boolean ended=false;
+
+    /**
+     * class constructor
+     * @param client the instance receiving the messages
+     * @param ms maximum waiting time for each message (0 to wait indefinitely)
+     */
+    MessageInputStream (ClientServer client, int ms) {
+        this.client=client;
+        this.ms=ms;
+    }
+
+    /**
+     * reads a byte
+     * @return int the byte read, -1 at the end of the stream
+     */
+    public int read () throws IOException {
+        if (!nextChunk())
+            return -1;
+        return chunk.get() & 0xFF;
+    }
+
+    /**
+     * reads bytes, at most the bytes remaining in the message being read
+     * @param b the array in which the bytes are written
+     * @param off the position of the first byte written
+     * @param len the maximum number of bytes to read
+     * @return int the number of bytes read, -1 at the end of the stream
+     */
+    public int read (byte[] b, int off, int len) throws IOException {
+        if (len==0)
+            return 0;
+        if (!nextChunk())
+            return -1;
+        int size=Math.min(len,chunk.remaining());
+        chunk.get(b, off, size);
+        return size;
+    }
+
+    /**
+     * returns the number of bytes which can be read without waiting
+     * @return int the number of bytes remaining in the message being read
+     */
+    public int available () {
+        return (chunk==null ? 0 : chunk.remaining());
+    }
+
+    /**
+     * stops reading the stream, the messages not read yet are not received
+     */
+    public void close () {
+        if (chunk!=null)
+            client.release(chunk);
+        chunk=null;
+        ended=true;
+    }
+
+    /**
+     * waits for the next message of the stream if the message being read is entirely read
+     * @return boolean true if there are bytes to read, false at the end of the stream
+     */
+    private boolean nextChunk () throws IOException {
+        while (!ended && (chunk==null || !chunk.hasRemaining())) {
+            if (chunk!=null)
+                client.release(chunk);
+            chunk=client.receiveStream(ms);
+            if (chunk==null)
+                throw new IOException("Impossible to receive the next part of the stream");
+            if (!chunk.hasRemaining()) // empty message : end of the stream
+                close();
+        }
+        return !ended;
+    }
+
+}
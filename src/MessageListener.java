@@ -0,0 +1,24 @@
+import java.net.InetAddress;
+
+/**
+* interface to be called when a message is received instead of waiting for it
+*/
+
+public interface MessageListener {
+
+    /**
+     * called with each message received
+     * @param message the message received (byte [], String, Integer, Boolean, Double, int [], boolean [] or double [])
+     * @param addr the address of the sender
+     * @param port the port of the sender
+     */
+    void onMessage (Object message, InetAddress addr, int port);
+
+    /**
+     * called when the client or server to which we are connected interrupts the communication
+     * @param addr the address of the sender
+     * @param port the port of the sender
+     */
+    default void onDisconnection (InetAddress addr, int port) {}
+
+}
@@ -0,0 +1,116 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+
+/**
+* class to send a stream of bytes of any length : the bytes are sent in messages of at most STREAM_CHUNK bytes, the end of the stream is sent as an empty message
+* only one chunk is kept in memory, in reliable mode the writes wait for the recipient like the other messages
+*/
+
+class MessageOutputStream extends OutputStream {
+
+    /**
+     * the instance sending the messages
+     */
+    private ClientServer client;
+
+    /**
+     * recipient's address
+     */
+    private InetAddress addr;
+
+    /**
+     * the recipient's port
+     */
+    private int port;
+
+    /**
+     * the bytes written since the last message sent
+     */
+    private byte[] chunk=new byte [ClientServer.STREAM_CHUNK];
+
+    /**
+     * the number of bytes written in chunk
+     */
+    private int length=0;
+
+    /**
+     * true if the end of the stream has been sent
+     */
+    private boolean closed=false;
+
+    /**
+     * class constructor
+     * @param client the instance sending the messages
+     * @param addr recipient's address
+     * @param port the recipient's port
+     */
+    MessageOutputStream (ClientServer client, InetAddress addr, int port) {
+        this.client=client;
+        this.addr=addr;
+        this.port=port;
+    }
+
+    /**
+     * writes a byte, the chunk is sent when it is full
+     * @param b the byte to write
+     */
+    public void write (int b) throws IOException {
+        if (closed)
+            throw new IOException("Impossible to write in the stream because it is closed");
+        if (length==chunk.length)
+            sendChunk();
+        chunk[length++]=(byte)b;
+    }
+
+    /**
+     * writes bytes, the chunk is sent each time it is full
+     * @param b the array containing the bytes to write
+     * @param off the position of the first byte to write
+     * @param len the number of bytes to write
+     */
+    public void write (byte[] b, int off, int len) throws IOException {
+        if (closed)
+            throw new IOException("Impossible to write in the stream because it is closed");
+        while (0<len) {
+            if (length==chunk.length)
+                sendChunk();
+            int size=Math.min(len,chunk.length-length);
+            System.arraycopy(b, off, chunk, length, size);
+            length+=size;
+            off+=size;
+            len-=size;
+        }
+    }
+
+    /**
+     * sends at once the bytes written
+     */
+    public void flush () throws IOException {
+        if (0<length)
+            sendChunk();
+        client.flush();
+    }
+
+    /**
+     * sends the bytes written and the end of the stream
+     */
+    public void close () throws IOException {
+        if (closed)
+            return;
+        if (0<length)
+            sendChunk();
+        sendChunk(); // empty message : end of the stream
+        client.flush();
+        closed=true;
+    }
+
+    /**
+     * sends the bytes written in a message
+     */
+    private void sendChunk () {
+        client.sendStream(addr,port,chunk,length);
+        length=0;
+    }
+
+}
@@ -0,0 +1,30 @@
+import java.nio.ByteBuffer;
+import java.util.function.BiFunction;
+
+/**
+* class to describe a type of message : its name and how to read it, the types are stored in a table indexed by their number
+*/
+
+class MessageType {
+
+    /**
+     * the name of the type
+     */
+    final String name;
+
+    /**
+     * reads a message of this type in a received message positioned after its type
+     */
+    final BiFunction <ClientServer, ByteBuffer, Object> decoder;
+
+    /**
+     * class constructor
+     * @param name the name of the type
+     * @param decoder reads a message of this type
+     */
+    MessageType (String name, BiFunction <ClientServer, ByteBuffer, Object> decoder) {
+        this.name=name;
+        this.decoder=decoder;
+    }
+
+}
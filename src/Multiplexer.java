@@ -0,0 +1,223 @@
+import java.net.DatagramPacket;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+* class to serve every client on a single port, the datagrams are routed to the sessions by address and port
+*/
+
+public class Multiplexer implements Runnable {
+
+    /**
+     * channel to send and receive messages of all the sessions
+     */
+    private DatagramChannel channel=null;
+
+    /**
+     * selector waiting for the messages on the channel
+     */
+    private Selector selector=null;
+
+    /**
+     * buffer to receive messages
+     */
+    private ByteBuffer receiveBuffer=null;
+
+    /**
+     * sessions opened, indexed by the address and the port of the client
+     */
+    private ConcurrentHashMap <SocketAddress, ClientServer> sessions=new ConcurrentHashMap <SocketAddress, ClientServer> ();
+
+    /**
+     * new sessions not yet accepted
+     */
+    private LinkedBlockingQueue <ClientServer> newSessions=new LinkedBlockingQueue <ClientServer> ();
+
+    /**
+     * thread running the selector
+     */
+    private Thread selectorThread=null;
+
+    /**
+     * class constructor
+     * @param port the port number used to receive messages of all the sessions
+     */
+    public Multiplexer (int port) {
+        this(port, ClientServer.DEFAULT_DATAGRAM_SIZE);
+    }
+
+    /**
+     * class constructor
+     * @param port the port number used to receive messages of all the sessions
+     * @param datagramSize the size of the datagrams sent and received (between 512 and 65507 bytes)
+     */
+    public Multiplexer (int port, int datagramSize) {
+        receiveBuffer=ByteBuffer.allocateDirect(Math.max(ClientServer.MIN_DATAGRAM_SIZE,Math.min(datagramSize,ClientServer.MAX_DATAGRAM_SIZE)));
+        try {
+            channel=DatagramChannel.open();
+            channel.bind(new InetSocketAddress(port));
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.SO_RCVBUF, ClientServer.RECEIVE_BUFFER_SIZE);
+            selector=Selector.open();
+            channel.register(selector, SelectionKey.OP_READ);
+            selectorThread=new Thread(this, "multiplexer-"+port);
+            selectorThread.setDaemon(true);
+            selectorThread.start();
+        } catch (Exception e) {
+            System.out.println("Impossible to create a channel on the port "+port);
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * returns the port number used to receive messages
+     * @return int the port number used to receive messages
+     */
+    public int getLocalPort () {
+        if (channel!=null && channel.isOpen())
+            return channel.socket().getLocalPort();
+        return -1;
+    }
+
+    /**
+     * returns the size of the receive buffer of the channel
+     * @return int the size of the receive buffer of the channel
+     */
+    public int getReceiveBufferSize () {
+        try {
+            return channel.getOption(StandardSocketOptions.SO_RCVBUF);
+        } catch (Exception e) {
+            return 0;
+        }
+    }
+
+    /**
+     * returns the number of sessions opened
+     * @return int the number of sessions opened
+     */
+    public int getNbSessions () {
+        return sessions.size();
+    }
+
+    /**
+     * waits for a new client
+     * @return ClientServer the session connected to the new client
+     */
+    public ClientServer accept () {
+        try {
+            return newSessions.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+
+    /**
+     * receives the messages and routes them to the sessions
+     */
+    public void run () {
+        while (channel.isOpen()) {
+            try {
+                selector.select();
+                selector.selectedKeys().clear();
+                SocketAddress sender;
+                while ((sender=channel.receive(receiveBuffer))!=null) {
+                    receiveBuffer.flip();
+                    byte[] buffer=new byte [receiveBuffer.remaining()];
+                    receiveBuffer.get(buffer);
+                    receiveBuffer.clear();
+                    route((InetSocketAddress)sender, buffer);
+                }
+            } catch (Exception e) {
+                if (channel.isOpen()) {
+                    System.out.println("Impossible to receive a message on the port "+getLocalPort());
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    /**
+     * gives a message to the session of its sender, creates the session if it is a connection request
+     * @param sender the address and the port of the sender
+     * @param buffer the message received
+     */
+    private void route (InetSocketAddress sender, byte[] buffer) {
+        DatagramPacket packet=new DatagramPacket(buffer, buffer.length, sender.getAddress(), sender.getPort());
+        ClientServer session=sessions.get(sender);
+        if (session!=null && session.continuesMessage(buffer)) { // the next part of a message, whatever its first bytes
+            session.touch();
+            session.deliver(packet);
+            return;
+        }
+        byte op=ClientServer.controlOpcode(ByteBuffer.wrap(buffer)); // first datagram of a message or control frame
+        int argument=(op==0 ? 0 : ByteBuffer.wrap(buffer).getInt(1));
+        if (session==null) {
+            if (op==ClientServer.CONTROL_CONNECT) {
+                int size=Math.max(ClientServer.MIN_DATAGRAM_SIZE,Math.min(argument,receiveBuffer.capacity()));
+                session=new ClientServer(this, sender.getAddress(), sender.getPort(), size);
+                sessions.put(sender, session);
+                session.sendControl(sender.getAddress(), sender.getPort(), ClientServer.CONTROL_ACCEPT, session.acceptReply(getLocalPort(), size));
+                newSessions.add(session);
+            }
+        }
+        else if (op==ClientServer.CONTROL_CONNECT) // the reply has been lost
+            session.sendControl(sender.getAddress(), sender.getPort(), ClientServer.CONTROL_ACCEPT, session.acceptReply(getLocalPort(), argument));
+        else {
+            session.touch();
+            if (op==ClientServer.CONTROL_PROBE || op==ClientServer.CONTROL_PING) // answered at once, the session may not be reading
+                session.sendControl(sender.getAddress(), sender.getPort(), ClientServer.CONTROL_ACK, argument);
+            else if (op==ClientServer.CONTROL_ACK && ClientServer.MAX_DATAGRAM_SIZE<argument) // answer to a ping, the session already knows the client is alive
+                return;
+            else {
+                if (op==ClientServer.CONTROL_DISCONNECT)
+                    sessions.remove(sender);
+                session.deliver(packet);
+            }
+        }
+    }
+
+    /**
+     * sends bytes to a session
+     * @param addr the address and the port of the client
+     * @param buffer bytes to send (max length = the size of the datagrams)
+     */
+    void send (InetSocketAddress addr, ByteBuffer buffer) {
+        try {
+            while (channel.send(buffer, addr)==0)
+                Thread.yield();
+        } catch (Exception e) {
+            System.out.println("Impossible to send the message to "+addr);
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * removes a session
+     * @param addr the address and the port of the client
+     */
+    void remove (InetSocketAddress addr) {
+        sessions.remove(addr);
+    }
+
+    /**
+     * closes the channel and stops receiving messages
+     */
+    public void close () {
+        try {
+            channel.close();
+            selector.wakeup();
+        } catch (Exception e) {
+            System.out.println("Impossible to close the channel");
+            e.printStackTrace();
+        }
+    }
+
+}
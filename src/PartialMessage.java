@@ -0,0 +1,141 @@
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+
+/**
+* class to store the fragments of a message received in reliable mode until all of them have arrived
+*/
+
+class PartialMessage {
+
+    /**
+     * the identifier of the message given by the sender
+     */
+    int id;
+
+    /**
+     * the address and the port of the sender
+     */
+    InetSocketAddress sender=null;
+
+    /**
+     * the number of fragments of the message
+     */
+    int count;
+
+    /**
+     * the last time (ns) a fragment of the message has been received
+     */
+    long lastUpdate=0;
+
+    /**
+     * the message being rebuilt, preceded by its length
+     */
+    byte[] data;
+
+    /**
+     * the fragments already received
+     */
+    boolean[] received;
+
+    /**
+     * the number of fragments already received
+     */
+    int nbReceived=0;
+
+    /**
+     * the first fragment not received
+     */
+    int next=0;
+
+    /**
+     * the highest fragment received
+     */
+    int highest=-1;
+
+    /**
+     * the number of fragments received since the last acknowledgement
+     */
+    int sinceAck=0;
+
+    /**
+     * the number of bytes of the message received in order (messages not sent in reliable mode)
+     */
+    int filled=0;
+
+    /**
+     * class constructor
+     * @param id the identifier of the message
+     * @param length the length of the message
+     * @param fragmentSize the number of bytes of the message in each fragment
+     */
+    PartialMessage (int id, int length, int fragmentSize) {
+        this.id=id;
+        data=new byte [4+length];
+        ByteBuffer.wrap(data).putInt(length);
+        count=Math.max(1,(length+fragmentSize-1)/fragmentSize);
+        received=new boolean [count];
+    }
+
+    /**
+     * copies a fragment in the message
+     * @param seq the number of the fragment
+     * @param offset the position of the fragment in the message
+     * @param fragment the bytes of the fragment
+     * @return boolean true if the fragment was not already received, false otherwise
+     */
+    boolean add (int seq, int offset, ByteBuffer fragment) {
+        if (received==null || seq<0 || count<=seq || received[seq] || data.length<4+offset+fragment.remaining())
+            return false;
+        fragment.get(data, 4+offset, fragment.remaining());
+        received[seq]=true;
+        nbReceived++;
+        sinceAck++;
+        if (highest<seq)
+            highest=seq;
+        while (next<count && received[next])
+            next++;
+        return true;
+    }
+
+    /**
+     * copies the next part of a message not sent in reliable mode, the parts arrive in order
+     * @param fragment the bytes of the part
+     * @return boolean true if the message is complete, false otherwise
+     */
+    boolean append (ByteBuffer fragment) {
+        int size=Math.min(fragment.remaining(),data.length-4-filled);
+        fragment.get(data, 4+filled, size);
+        filled+=size;
+        return filled==data.length-4;
+    }
+
+    /**
+     * returns true if all the fragments have been received, false otherwise
+     * @return boolean true if all the fragments have been received, false otherwise
+     */
+    boolean isComplete () {
+        return nbReceived==count;
+    }
+
+    /**
+     * writes the fragments received after the first one missing (bit i%8 of the byte i/8 for the fragment next+1+i)
+     * @param buffer the buffer in which the fragments received are written, preceded by the number of bytes used
+     * @param maxBytes the maximum number of bytes used
+     */
+    void putSelectiveAck (ByteBuffer buffer, int maxBytes) {
+        int nbBytes=Math.min(maxBytes,(count-next-1+7)/8);
+        if (received==null || nbBytes<0)
+            nbBytes=0;
+        buffer.putShort((short)nbBytes);
+        for (int i=0;i<nbBytes;i++) {
+            byte bits=0;
+            for (int j=0;j<8;j++) {
+                int seq=next+1+8*i+j;
+                if (seq<count && received[seq])
+                    bits |= (1 << j);
+            }
+            buffer.put(bits);
+        }
+    }
+
+}
@@ -0,0 +1,138 @@
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+* class to rebuild the messages received in reliable mode, several messages of several senders can be rebuilt at the same time
+*/
+
+class Reassembly {
+
+    /**
+     * messages being rebuilt or recently rebuilt, indexed by sender and identifier, from the least recently updated to the most recently updated
+     */
+    private LinkedHashMap <MessageKey, PartialMessage> messages=new LinkedHashMap <MessageKey, PartialMessage> (16, 0.75f, true);
+
+    /**
+     * key reused to look for a message without allocating
+     */
+    private MessageKey probe=new MessageKey(null, -1, 0);
+
+    /**
+     * time (ns) after which a message not updated is forgotten
+     */
+    private long timeout;
+
+    /**
+     * the next time (ns) the old messages will be forgotten
+     */
+    private long nextEviction=0;
+
+    /**
+     * class constructor
+     * @param ms time after which a message not updated is forgotten
+     */
+    Reassembly (int ms) {
+        timeout=ms*1_000_000L;
+    }
+
+    /**
+     * returns the message being rebuilt
+     * @param addr the address of the sender
+     * @param port the port of the sender
+     * @param id the identifier of the message
+     * @return PartialMessage the message being rebuilt, null if no fragment of the message has been received
+     */
+    PartialMessage get (InetAddress addr, int port, int id) {
+        probe.addr=addr;
+        probe.port=port;
+        probe.id=id;
+        PartialMessage res=messages.get(probe);
+        probe.addr=null;
+        if (res!=null)
+            res.lastUpdate=System.nanoTime();
+        return res;
+    }
+
+    /**
+     * starts rebuilding a message
+     * @param addr the address of the sender
+     * @param port the port of the sender
+     * @param id the identifier of the message
+     * @param length the length of the message
+     * @param fragmentSize the number of bytes of the message in each fragment
+     * @return PartialMessage the message to rebuild
+     */
+    PartialMessage create (InetAddress addr, int port, int id, int length, int fragmentSize) {
+        PartialMessage res=new PartialMessage(id, length, fragmentSize);
+        res.sender=new InetSocketAddress(addr, port);
+        res.lastUpdate=System.nanoTime();
+        messages.put(new MessageKey(addr, port, id), res);
+        return res;
+    }
+
+    /**
+     * forgets the content of a message rebuilt, it is kept to acknowledge again its fragments if they are sent again
+     * @param message the message rebuilt
+     */
+    void complete (PartialMessage message) {
+        message.data=null;
+        message.received=null;
+    }
+
+    /**
+     * forgets the messages not updated during the timeout
+     */
+    void evict () {
+        long now=System.nanoTime();
+        if (now<nextEviction)
+            return;
+        nextEviction=now+timeout/4;
+        Iterator <PartialMessage> iterator=messages.values().iterator();
+        while (iterator.hasNext()) {
+            if (now-iterator.next().lastUpdate<timeout)
+                return; // the next messages have been updated later
+            iterator.remove();
+        }
+    }
+
+    /**
+     * returns the number of messages being rebuilt or recently rebuilt
+     * @return int the number of messages
+     */
+    int size () {
+        return messages.size();
+    }
+
+    /**
+     * key of a message : its sender and its identifier
+     */
+    private static class MessageKey {
+
+        InetAddress addr;
+
+        int port;
+
+        int id;
+
+        MessageKey (InetAddress addr, int port, int id) {
+            this.addr=addr;
+            this.port=port;
+            this.id=id;
+        }
+
+        public boolean equals (Object o) {
+            if (!(o instanceof MessageKey))
+                return false;
+            MessageKey key=(MessageKey)o;
+            return id==key.id && port==key.port && addr.equals(key.addr);
+        }
+
+        public int hashCode () {
+            return 31*(31*addr.hashCode()+port)+id;
+        }
+
+    }
+
+}
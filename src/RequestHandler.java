@@ -0,0 +1,18 @@
+import java.net.InetAddress;
+
+/**
+* interface to answer the requests sent with call, it is called by a thread of a pool so several requests can be answered at the same time
+*/
+
+public interface RequestHandler {
+
+    /**
+     * answers a request
+     * @param request the request received
+     * @param addr the address of the sender
+     * @param port the port of the sender
+     * @return Object the response sent back, of any type sent by sendObject, null to send an empty response
+     */
+    Object onRequest (Object request, InetAddress addr, int port) throws Exception;
+
+}
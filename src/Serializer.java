@@ -0,0 +1,70 @@
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+* interface to convert the objects of a class into bytes and back, the fields are written one after the other without their names, always in the same order : this order is the schema shared by the sender and the recipients
+*/
+
+public interface Serializer <T> {
+
+    /**
+     * writes the fields of an object, the buffer is enlarged and write called again if it is full
+     * @param message the object to write
+     * @param buffer the buffer in which the fields are written
+     */
+    void write (T message, ByteBuffer buffer);
+
+    /**
+     * reads the fields of an object written by write
+     * @param buffer the buffer from which the fields are read
+     * @return T the object read
+     */
+    T read (ByteBuffer buffer);
+
+    /**
+     * writes a String preceded by its length, in UTF-8
+     * @param buffer the buffer in which the String is written
+     * @param message the String to write
+     */
+    static void putString (ByteBuffer buffer, String message) {
+        byte[] bytes=message.getBytes(StandardCharsets.UTF_8);
+        putLength(buffer, bytes.length);
+        buffer.put(bytes);
+    }
+
+    /**
+     * reads a String written by putString
+     * @param buffer the buffer from which the String is read
+     * @return String the String read
+     */
+    static String getString (ByteBuffer buffer) {
+        byte[] bytes=new byte [getLength(buffer)];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * writes a length (or any positive int) in 1 to 5 bytes, the small ones being the shortest
+     * @param buffer the buffer in which the length is written
+     * @param length the length to write
+     */
+    static void putLength (ByteBuffer buffer, int length) {
+        if (!Varint.put(buffer, length))
+            throw new BufferOverflowException();
+    }
+
+    /**
+     * reads a length written by putLength
+     * @param buffer the buffer from which the length is read
+     * @return int the length read
+     */
+    static int getLength (ByteBuffer buffer) {
+        int res=Varint.get(buffer);
+        if (res<0)
+            throw new BufferUnderflowException();
+        return res;
+    }
+
+}
@@ -1,34 +1,174 @@
 import java.net.InetAddress;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
 
 public class Server {
-    private static ClientServer clients=new ClientServer(9876);
+    private static ClientServer clients=null;
     private static int portCommunication=9877;
-    
+    private static ExecutorService executor=null; // null : a new thread per client
+    private static Semaphore sessions=null; // the sessions a pool can serve at the same time, null : no limit
+    private static final int KEEP_ALIVE_INTERVAL=5000; // ms without hearing from a client before pinging it
+    private static final int KEEP_ALIVE_TIMEOUT=30000; // ms without hearing from a client before forgetting it
+
+    // usage : java Server [nio [async | rpc | broker [drop | block] [<queueSize>]]] [virtual | pool <nbThreads>]
+    // a thread serves a client during its whole session : with pool, at most nbThreads clients are served at the same time and the next ones are disconnected at once
     public static void main(String[] args) throws Exception {
+        int i=0;
+        boolean multiplexed=(i<args.length && args[i].equals("nio"));
+        if (multiplexed)
+            i++;
+        if (multiplexed && i<args.length && args[i].equals("async")) {
+            mainAsync();
+            return;
+        }
+        if (multiplexed && i<args.length && args[i].equals("rpc")) {
+            mainRpc();
+            return;
+        }
+        Broker broker=null;
+        if (multiplexed && i<args.length && args[i].equals("broker")) {
+            i++;
+            boolean drop=true;
+            if (i<args.length && (args[i].equals("drop") || args[i].equals("block")))
+                drop=args[i++].equals("drop");
+            int queueSize=1024;
+            if (i<args.length && args[i].matches("[0-9]+"))
+                queueSize=Integer.parseInt(args[i++]);
+            broker=new Broker(queueSize, drop);
+        }
+        if (i<args.length && args[i].equals("virtual"))
+            executor=newVirtualThreadExecutor();
+        else if (i+1<args.length && args[i].equals("pool")) {
+            int nbThreads=Integer.parseInt(args[i+1]);
+            executor=Executors.newFixedThreadPool(nbThreads);
+            sessions=new Semaphore(nbThreads);
+        }
+        if (broker!=null) {
+            mainBroker(broker);
+            return;
+        }
+        if (multiplexed) {
+            mainMultiplexed();
+            return;
+        }
+        clients=new ClientServer(9876);
         while (true) {
+            ClientServer client=new ClientServer(portCommunication); // listens before the port is given to the client
             clients.waitClient(portCommunication);
 
-            InetAddress addrClient=clients.getLastAddress();
-            int portClient=clients.getLastPort();
-            int portListener=portCommunication;
-            Thread newClient = new Thread(() -> {
-                treatClient(addrClient, portClient, portListener);
+            client.connectToClient(clients.getLastAddress(), clients.getLastPort());
+            startClient(client, () -> {
+                client.setKeepAlive(KEEP_ALIVE_INTERVAL, KEEP_ALIVE_TIMEOUT);
+                treatClient(client);
+                client.close(); // frees the port of the client
             });
-            newClient.start();
 
             portCommunication++;
         }
     }
 
-    private static void treatClient (InetAddress addrClient, int portClient, int portListener) {
-        System.out.println("New client "+addrClient+" on "+portClient);
-        ClientServer client=new ClientServer(portListener);
+    private static void mainMultiplexed () {
+        Multiplexer multiplexer=new Multiplexer(9876);
+        while (true) {
+            ClientServer client=multiplexer.accept();
+            client.setKeepAlive(KEEP_ALIVE_INTERVAL, KEEP_ALIVE_TIMEOUT);
+            startClient(client, () -> {
+                treatClient(client);
+            });
+        }
+    }
 
-        client.connectToClient(addrClient, portClient);
+    // the clients subscribe to topics and publish messages, a thread per client waits for its requests
+    private static void mainBroker (Broker broker) {
+        Multiplexer multiplexer=new Multiplexer(9876);
+        while (true) {
+            ClientServer client=multiplexer.accept();
+            client.setKeepAlive(KEEP_ALIVE_INTERVAL, KEEP_ALIVE_TIMEOUT);
+            InetAddress addrClient=client.getAddressCom();
+            int portClient=client.getPortCom();
+            startClient(client, () -> {
+                System.out.println("New client "+addrClient+" on "+portClient);
+                broker.serve(client);
+                System.out.println("Deconnection client "+addrClient+" on "+portClient);
+            });
+        }
+    }
+
+    // the requests of every session are answered by a pool of threads, several requests of a client can be answered at the same time
+    private static void mainRpc () {
+        Multiplexer multiplexer=new Multiplexer(9876);
+        while (true) {
+            ClientServer client=multiplexer.accept();
+            System.out.println("New client "+client.getAddressCom()+" on "+client.getPortCom());
+            client.setKeepAlive(KEEP_ALIVE_INTERVAL, KEEP_ALIVE_TIMEOUT);
+            client.setRequestHandler((request, addr, port) -> "Received "+request);
+        }
+    }
+
+    // every session is served by the thread of the multiplexer, without waiting for the messages
+    private static void mainAsync () {
+        Multiplexer multiplexer=new Multiplexer(9876);
+        while (true) {
+            ClientServer client=multiplexer.accept();
+            InetAddress addrClient=client.getAddressCom();
+            int portClient=client.getPortCom();
+            System.out.println("New client "+addrClient+" on "+portClient);
+            client.setKeepAlive(KEEP_ALIVE_INTERVAL, KEEP_ALIVE_TIMEOUT);
+            client.setListener(new MessageListener() {
+                public void onMessage (Object message, InetAddress addr, int port) {
+                    System.out.println("Client sent : "+message);
+                    client.send("Received");
+                }
+
+                public void onDisconnection (InetAddress addr, int port) {
+                    System.out.println("Deconnection client "+addrClient+" on "+portClient);
+                }
+            });
+        }
+    }
+
+    // the client is disconnected at once if the pool already serves as many sessions as it has threads, instead of waiting for a thread which may never be free
+    private static void startClient (ClientServer client, Runnable treatment) {
+        if (sessions!=null && !sessions.tryAcquire()) {
+            System.out.println("Impossible to serve the client "+client.getAddressCom()+" on "+client.getPortCom()+" because all the threads are serving a client");
+            client.close();
+            return;
+        }
+        Runnable session=treatment;
+        if (sessions!=null) {
+            session=() -> {
+                try {
+                    treatment.run();
+                } finally {
+                    sessions.release();
+                }
+            };
+        }
+        if (executor!=null)
+            executor.execute(session);
+        else
+            new Thread(session).start();
+    }
+
+    // virtual threads park cheaply while a session waits for a message (Java 21+), null : a new thread per client
+    private static ExecutorService newVirtualThreadExecutor () {
+        try {
+            return (ExecutorService)Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (Exception e) {
+            System.out.println("Virtual threads aren't available before Java 21, a new thread is used per client");
+            return null;
+        }
+    }
+
+    private static void treatClient (ClientServer client) {
+        InetAddress addrClient=client.getAddressCom();
+        int portClient=client.getPortCom();
+        System.out.println("New client "+addrClient+" on "+portClient);
 
         while (client.isConnected()) {
             String receivedMessage=client.receiveString();
-            if (!client.isDeconnectionMessage(receivedMessage)) {
+            if (client.isConnected()) {
                 System.out.println("Client sent : "+receivedMessage);
                 client.send("Received");
             }
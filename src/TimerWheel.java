@@ -0,0 +1,130 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.LongUnaryOperator;
+
+/**
+* class to run tasks after a delay, the tasks are stored in a circular array of slots, one slot by tick of time
+* adding a task and running it costs O(1), whatever the number of tasks waiting
+*/
+
+class TimerWheel implements Runnable {
+
+    /**
+     * the duration (ns) of a tick
+     */
+    private long tick;
+
+    /**
+     * the tasks waiting, in the slot of the tick they expire (modulo the number of slots)
+     */
+    private List <ArrayList <Entry>> slots;
+
+    /**
+     * the number of ticks elapsed
+     */
+    private long cursor=0;
+
+    /**
+     * thread moving the cursor, started with the first task
+     */
+    private Thread thread=null;
+
+    /**
+     * the name of the thread
+     */
+    private String name;
+
+    /**
+     * class constructor
+     * @param tickMs the duration of a tick, the tasks are run at most a tick late
+     * @param nbSlots the number of slots, the tasks expiring after more ticks wait several turns
+     * @param name the name of the thread running the tasks
+     */
+    TimerWheel (int tickMs, int nbSlots, String name) {
+        tick=tickMs*1_000_000L;
+        slots=new ArrayList <ArrayList <Entry>> (nbSlots);
+        for (int i=0;i<nbSlots;i++)
+            slots.add(new ArrayList <Entry> ());
+        this.name=name;
+    }
+
+    /**
+     * adds a task
+     * @param task the task, called with the current time (ns) it returns the delay (ns) before it is run again, a negative delay to stop
+     * @param delay the delay (ns) before the task is run
+     */
+    synchronized void schedule (LongUnaryOperator task, long delay) {
+        long expiration=cursor+Math.max(1,(delay+tick-1)/tick);
+        slots.get((int)(expiration%slots.size())).add(new Entry(task, expiration));
+        if (thread==null) {
+            thread=new Thread(this, name);
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    /**
+     * moves the cursor each tick and runs the tasks expired
+     */
+    public void run () {
+        long next=System.nanoTime()+tick;
+        while (true) {
+            long wait=next-System.nanoTime();
+            if (0<wait) {
+                try {
+                    Thread.sleep(wait/1_000_000L, (int)(wait%1_000_000L));
+                } catch (InterruptedException e) {
+                    return;
+                }
+                continue;
+            }
+            next+=tick;
+            for (Entry entry : advance()) {
+                long delay=-1;
+                try {
+                    delay=entry.task.applyAsLong(System.nanoTime());
+                } catch (Exception e) {
+                    System.out.println("Impossible to run the task "+entry.task);
+                    e.printStackTrace();
+                }
+                if (0<=delay)
+                    schedule(entry.task, delay);
+            }
+        }
+    }
+
+    /**
+     * moves the cursor to the next tick and removes the tasks expired from its slot
+     * @return ArrayList the tasks expired
+     */
+    private synchronized ArrayList <Entry> advance () {
+        cursor++;
+        ArrayList <Entry> slot=slots.get((int)(cursor%slots.size()));
+        ArrayList <Entry> res=new ArrayList <Entry> ();
+        for (int i=slot.size()-1;0<=i;i--) {
+            if (slot.get(i).expiration<=cursor) {
+                res.add(slot.get(i));
+                slot.set(i, slot.get(slot.size()-1)); // the last task takes its place
+                slot.remove(slot.size()-1);
+            }
+        }
+        return res;
+    }
+
+    /**
+     * a task and the tick it expires
+     */
+    private static class Entry {
+
+        LongUnaryOperator task;
+
+        long expiration;
+
+        Entry (LongUnaryOperator task, long expiration) {
+            this.task=task;
+            this.expiration=expiration;
+        }
+
+    }
+
+}
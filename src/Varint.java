@@ -0,0 +1,46 @@
+import java.nio.ByteBuffer;
+
+/**
+* class to write the ints in 1 to 5 bytes, 7 bits by byte, the small ones being the shortest
+*/
+
+class Varint {
+
+    /**
+     * writes an int
+     * @param buffer the buffer in which the int is written
+     * @param value the int to write
+     * @return boolean true if the int has been written, false if there isn't enough space in the buffer
+     */
+    static boolean put (ByteBuffer buffer, int value) {
+        while ((value & ~0x7F)!=0) {
+            if (!buffer.hasRemaining())
+                return false;
+            buffer.put((byte)((value & 0x7F) | 0x80));
+            value>>>=7;
+        }
+        if (!buffer.hasRemaining())
+            return false;
+        buffer.put((byte)value);
+        return true;
+    }
+
+    /**
+     * reads an int
+     * @param buffer the buffer from which the int is read
+     * @return int the int read, -1 if it is truncated
+     */
+    static int get (ByteBuffer buffer) {
+        int res=0;
+        for (int shift=0;shift<32;shift+=7) {
+            if (!buffer.hasRemaining())
+                return -1;
+            byte b=buffer.get();
+            res|=(b & 0x7F) << shift;
+            if (0<=b)
+                return res;
+        }
+        return -1;
+    }
+
+}
@@ -0,0 +1,33 @@
+import java.net.InetAddress;
+import java.util.Arrays;
+
+// sends a message of many datagrams in reliable mode with the batching enabled
+// usage : javac -d out src/*.java test/*.java && java -cp out ReliableBatchingTest
+public class ReliableBatchingTest {
+    public static void main(String[] args) throws Exception {
+        InetAddress addr=InetAddress.getLoopbackAddress();
+        ClientServer sender=new ClientServer();
+        ClientServer receiver=new ClientServer();
+        sender.setReliable(true);
+        sender.setBatching(true);
+        receiver.setReliable(true);
+        int port=receiver.getLocalPort();
+
+        double[] message=new double [20000];
+        for (int i=0;i<message.length;i++)
+            message[i]=i/3.0;
+        Thread thread=new Thread(() -> {
+            sender.send(addr, port, message); // waits for the acknowledgements
+            sender.send(addr, port, "end");
+        });
+        thread.start();
+
+        double[] received=receiver.receiveDoubleArray(5000);
+        String end=receiver.receiveString(5000);
+        thread.join(5000);
+        if (!Arrays.equals(message, received) || !"end".equals(end))
+            throw new AssertionError("the message sent in reliable mode with the batching isn't received");
+        System.out.println("ok");
+        System.exit(0);
+    }
+}